@@ -123,7 +123,7 @@ public class MetaLanguageLoader implements IResourceChangeListener {
     public Job loadFromProjectsJob() {
         final Job job = new DiscoverLanguagesFromProjectsJob(this);
         job.setRule(new MultiRule(new ISchedulingRule[] { workspaceRoot, globalRules.startupWriteLock(),
-            globalRules.languageServiceLock() }));
+            globalRules.languageServiceLock(), globalRules.strategoLock() }));
         job.schedule();
         return job;
     }
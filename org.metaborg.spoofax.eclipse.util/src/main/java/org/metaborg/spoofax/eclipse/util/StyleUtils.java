@@ -5,6 +5,9 @@ import static org.apache.commons.lang3.math.NumberUtils.min;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.jface.resource.ColorRegistry;
 import org.eclipse.jface.text.IRegion;
@@ -28,7 +31,12 @@ public final class StyleUtils {
     /**
      * Stores whether the current theme is a dark theme or not.
      */
-    private static boolean isDarkTheme = false;
+    private static volatile boolean isDarkTheme = false;
+
+    /**
+     * Caches of colors and style range templates, per display.
+     */
+    private static final ConcurrentMap<Display, StyleCache> caches = new ConcurrentHashMap<>();
 
     static {
         calculateDarkTheme();
@@ -43,6 +51,10 @@ public final class StyleUtils {
             foregroundColor = colorRegistry.get("org.eclipse.ui.editors.foregroundColor");
         // If the text color is lighter than average (gray), then it's probably a light theme
         isDarkTheme = foregroundColor.getRed() + foregroundColor.getGreen() + foregroundColor.getBlue() > 384;
+        // Style range templates contain colors with inverted lightness for dark themes, recreate them.
+        for(StyleCache cache : caches.values()) {
+            cache.clearTemplates();
+        }
     }
 
     /**
@@ -76,24 +88,83 @@ public final class StyleUtils {
      * @return Eclipse text presentation.
      */
     public static <T> TextPresentation createTextPresentation(Iterable<IRegionStyle<T>> styles, Display display) {
-        final TextPresentation presentation = new TextPresentation();
-        for(IRegionStyle<T> regionStyle : styles) {
-            final StyleRange styleRange = createStyleRange(regionStyle, display);
+        return createTextPresentation(createStyleRanges(styles, display), display);
+    }
+
+    /**
+     * Creates an Eclipse text presentation from given style ranges.
+     * 
+     * @param styleRanges
+     *            Style ranges, ordered by start offset.
+     * @param display
+     *            Display to create the Eclipse text presentation on.
+     * @return Eclipse text presentation.
+     */
+    public static TextPresentation createTextPresentation(List<StyleRange> styleRanges, Display display) {
+        final TextPresentation presentation = new TextPresentation(styleRanges.size());
+        for(StyleRange styleRange : styleRanges) {
             presentation.addStyleRange(styleRange);
         }
         IRegion extent = presentation.getExtent();
         if(extent == null) {
             extent = new Region(0, 0);
         }
-        final StyleRange defaultStyleRange = new StyleRange();
-        defaultStyleRange.start = extent.getOffset();
-        defaultStyleRange.length = extent.getLength();
-        defaultStyleRange.foreground = createColor(java.awt.Color.BLACK, display);
-        presentation.setDefaultStyleRange(defaultStyleRange);
+        presentation.setDefaultStyleRange(createDefaultStyleRange(extent.getOffset(), extent.getLength(), display));
+
+        return presentation;
+    }
 
+    /**
+     * Creates an Eclipse text presentation that only covers given region, from given style ranges. Text in the region
+     * that is not covered by a style range is reset to the default style.
+     * 
+     * @param styleRanges
+     *            Style ranges, ordered by start offset.
+     * @param fromIndex
+     *            Index of the first style range to include.
+     * @param toIndex
+     *            Index after the last style range to include. All included style ranges must lie within the region.
+     * @param region
+     *            Region the text presentation covers.
+     * @param display
+     *            Display to create the Eclipse text presentation on.
+     * @return Eclipse text presentation.
+     */
+    public static TextPresentation createTextPresentation(List<StyleRange> styleRanges, int fromIndex, int toIndex,
+        IRegion region, Display display) {
+        final TextPresentation presentation = new TextPresentation(region, Math.max(1, toIndex - fromIndex));
+        presentation.setDefaultStyleRange(createDefaultStyleRange(region.getOffset(), region.getLength(), display));
+        for(int i = fromIndex; i < toIndex; ++i) {
+            presentation.addStyleRange(styleRanges.get(i));
+        }
         return presentation;
     }
 
+    /**
+     * Creates Eclipse style ranges from given Spoofax styles.
+     * 
+     * @param styles
+     *            Stream of Spoofax styles.
+     * @param display
+     *            Display to create the Eclipse style ranges on.
+     * @return Eclipse style ranges, in the order of given Spoofax styles.
+     */
+    public static <T> List<StyleRange> createStyleRanges(Iterable<IRegionStyle<T>> styles, Display display) {
+        final List<StyleRange> styleRanges = Lists.newArrayList();
+        for(IRegionStyle<T> regionStyle : styles) {
+            styleRanges.add(createStyleRange(regionStyle, display));
+        }
+        return styleRanges;
+    }
+
+    private static StyleRange createDefaultStyleRange(int start, int length, Display display) {
+        final StyleRange defaultStyleRange = new StyleRange();
+        defaultStyleRange.start = start;
+        defaultStyleRange.length = length;
+        defaultStyleRange.foreground = createColor(java.awt.Color.BLACK, display);
+        return defaultStyleRange;
+    }
+
     /**
      * Creates an Eclipse style range from given Spoofax style region.
      * 
@@ -104,9 +175,16 @@ public final class StyleUtils {
      * @return Eclipse style range.
      */
     public static StyleRange createStyleRange(IRegionStyle<?> regionStyle, Display display) {
-        final IStyle style = regionStyle.style();
         final ISourceRegion region = regionStyle.region();
 
+        final StyleRange styleRange = deepCopy(cache(display).template(regionStyle.style()));
+        styleRange.start = region.startOffset();
+        styleRange.length = region.endOffset() - region.startOffset() + 1;
+
+        return styleRange;
+    }
+
+    private static StyleRange createTemplate(IStyle style, Display display) {
         final StyleRange styleRange = new StyleRange();
         final java.awt.Color foreground = style.color();
         if(foreground != null) {
@@ -128,15 +206,12 @@ public final class StyleUtils {
         if(style.strikeout()) {
             styleRange.strikeout = true;
         }
-
-        styleRange.start = region.startOffset();
-        styleRange.length = region.endOffset() - region.startOffset() + 1;
-
         return styleRange;
     }
 
     /**
-     * Creates an Eclipse color from given Java color.
+     * Gets an Eclipse color for given Java color. Colors are shared per display, and disposed when the display is
+     * disposed. The returned color must not be disposed by the caller.
      * 
      * @param color
      *            Java color.
@@ -148,8 +223,102 @@ public final class StyleUtils {
         if(isDarkTheme) {
             color = invertLightness(color);
         }
-        // GTODO: this color object needs to be disposed manually!
-        return new Color(display, color.getRed(), color.getGreen(), color.getBlue());
+        return cache(display).color(color.getRGB() & 0xFFFFFF);
+    }
+
+    private static StyleCache cache(Display display) {
+        final StyleCache cache = caches.get(display);
+        if(cache != null) {
+            return cache;
+        }
+        final StyleCache newCache = new StyleCache(display);
+        final StyleCache existingCache = caches.putIfAbsent(display, newCache);
+        if(existingCache != null) {
+            return existingCache;
+        }
+        // THREADING: dispose hooks can only be registered from the thread of the display.
+        display.asyncExec(() -> display.disposeExec(() -> {
+            caches.remove(display);
+            newCache.dispose();
+        }));
+        return newCache;
+    }
+
+    /**
+     * Cache of colors, keyed by packed RGB value, and style range templates, keyed by the packed value of a Spoofax
+     * style, for a single display. Templates are keyed by value instead of by style object, such that styles of
+     * reloaded languages share templates, and are not retained by the cache.
+     */
+    private static final class StyleCache {
+        private final Display display;
+        private final ConcurrentMap<Integer, Color> colors = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Long, StyleRange> templates = new ConcurrentHashMap<>();
+
+
+        public StyleCache(Display display) {
+            this.display = display;
+        }
+
+
+        public Color color(int rgb) {
+            final Color color = colors.get(rgb);
+            if(color != null) {
+                return color;
+            }
+            final Color newColor = new Color(display, (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+            final Color existingColor = colors.putIfAbsent(rgb, newColor);
+            if(existingColor != null) {
+                newColor.dispose();
+                return existingColor;
+            }
+            return newColor;
+        }
+
+        public StyleRange template(IStyle style) {
+            final long key = key(style);
+            final StyleRange template = templates.get(key);
+            if(template != null) {
+                return template;
+            }
+            final StyleRange newTemplate = createTemplate(style, display);
+            final StyleRange existingTemplate = templates.putIfAbsent(key, newTemplate);
+            return existingTemplate != null ? existingTemplate : newTemplate;
+        }
+
+        public void clearTemplates() {
+            // Colors are keyed by their actual RGB value and stay valid, only the templates refer to other colors.
+            templates.clear();
+        }
+
+        public void dispose() {
+            templates.clear();
+            for(Color color : colors.values()) {
+                color.dispose();
+            }
+            colors.clear();
+        }
+
+
+        /**
+         * Packs the values of given style into a long: the foreground and background colors take 25 bits each (a
+         * presence bit and the RGB value), followed by a bit for each font style.
+         */
+        private static long key(IStyle style) {
+            long key = color(style.color());
+            key = (key << 25) | color(style.backgroundColor());
+            key = (key << 1) | (style.bold() ? 1 : 0);
+            key = (key << 1) | (style.italic() ? 1 : 0);
+            key = (key << 1) | (style.underscore() ? 1 : 0);
+            key = (key << 1) | (style.strikeout() ? 1 : 0);
+            return key;
+        }
+
+        private static long color(java.awt.Color color) {
+            if(color == null) {
+                return 0;
+            }
+            return (1L << 24) | (color.getRGB() & 0xFFFFFF);
+        }
     }
 
     // Invert lightness of color (note: lightness != brightness/value! L=0 is black, L=1 is white, L=0.5 is color).
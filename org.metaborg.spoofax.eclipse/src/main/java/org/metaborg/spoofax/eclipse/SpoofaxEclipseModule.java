@@ -14,13 +14,20 @@ import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnitUpdate;
 import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxTransformUnit;
+import org.metaborg.spoofax.eclipse.build.MarkerOverflow;
+import org.metaborg.spoofax.eclipse.build.ProjectBuildCache;
 import org.metaborg.spoofax.eclipse.dialogs.EclipseSpoofaxDialogService;
+import org.metaborg.spoofax.eclipse.editor.EditorUpdateScheduler;
 import org.metaborg.spoofax.eclipse.editor.IEclipseEditorRegistry;
 import org.metaborg.spoofax.eclipse.editor.IEclipseEditorRegistryInternal;
+import org.metaborg.spoofax.eclipse.editor.IEditorUpdateScheduler;
 import org.metaborg.spoofax.eclipse.editor.SpoofaxEditorRegistry;
 import org.metaborg.spoofax.eclipse.job.GlobalSchedulingRules;
 import org.metaborg.spoofax.eclipse.language.EclipseLanguageChangeProcessor;
+import org.metaborg.spoofax.eclipse.language.LanguageFileIndex;
 import org.metaborg.spoofax.eclipse.language.LanguageLoader;
+import org.metaborg.spoofax.eclipse.language.LanguageReadiness;
+import org.metaborg.spoofax.eclipse.language.PluginLanguageCache;
 import org.metaborg.spoofax.eclipse.processing.SpoofaxProcessor;
 import org.metaborg.spoofax.eclipse.project.EclipseProjectService;
 import org.metaborg.spoofax.eclipse.project.IEclipseProjectService;
@@ -46,9 +53,16 @@ public class SpoofaxEclipseModule extends SpoofaxModule {
         super.configure();
 
         bind(GlobalSchedulingRules.class).in(Singleton.class);
+        bind(MarkerOverflow.class).in(Singleton.class);
+        bind(ProjectBuildCache.class).in(Singleton.class);
         bind(EclipseLanguageChangeProcessor.class).in(Singleton.class);
         bind(LanguageLoader.class).in(Singleton.class);
+        bind(LanguageFileIndex.class).in(Singleton.class);
+        bind(LanguageReadiness.class).in(Singleton.class);
+        bind(PluginLanguageCache.class).in(Singleton.class);
         bind(SpoofaxPreferences.class).in(Singleton.class);
+        bind(EditorUpdateScheduler.class).in(Singleton.class);
+        bind(IEditorUpdateScheduler.class).to(EditorUpdateScheduler.class);
     }
 
 
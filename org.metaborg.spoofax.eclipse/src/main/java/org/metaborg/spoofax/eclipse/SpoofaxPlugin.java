@@ -13,6 +13,7 @@ import org.metaborg.spoofax.core.Spoofax;
 import org.metaborg.spoofax.eclipse.editor.IEclipseEditorRegistryInternal;
 import org.metaborg.spoofax.eclipse.logging.LoggingConfiguration;
 import org.metaborg.spoofax.eclipse.processing.SpoofaxProcessor;
+import org.metaborg.spoofax.eclipse.project.EclipseProjectService;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,6 +71,7 @@ public class SpoofaxPlugin extends AbstractUIPlugin implements IStartup {
     @Override public void stop(BundleContext context) throws Exception {
         logger.debug("Stopping Spoofax plugin");
         doneLoading = false;
+        injector.getInstance(EclipseProjectService.class).close();
         injector = null;
         spoofax.close();
         spoofax = null;
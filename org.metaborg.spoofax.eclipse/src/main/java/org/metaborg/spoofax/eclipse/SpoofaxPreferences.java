@@ -1,6 +1,7 @@
 package org.metaborg.spoofax.eclipse;
 
 import org.eclipse.core.commands.Command;
+import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.commands.ICommandService;
 import org.metaborg.spoofax.eclipse.util.CommandStateUtils;
@@ -8,6 +9,17 @@ import org.metaborg.spoofax.eclipse.util.CommandStateUtils;
 import com.google.inject.Inject;
 
 public class SpoofaxPreferences {
+    /**
+     * Preference key for the maximum number of markers a build creates per resource.
+     */
+    public static final String maxMarkersPerResourceKey = "markers.max.resource";
+    /**
+     * Preference key for the maximum number of markers a build creates per project.
+     */
+    public static final String maxMarkersPerProjectKey = "markers.max.project";
+    private static final int defaultMaxMarkersPerResource = 1000;
+    private static final int defaultMaxMarkersPerProject = 20000;
+
     private final ICommandService commandService;
 
     private final Command disableBuildCommand;
@@ -40,8 +52,24 @@ public class SpoofaxPreferences {
     public boolean disableEditorAnalysis() {
         return CommandStateUtils.toggleState(disableEditorAnalysisCommand);
     }
-    
+
     public boolean delayEditorAnalysis() {
         return CommandStateUtils.toggleState(delayEditorAnalysisCommand);
     }
+
+    public int maxMarkersPerResource() {
+        return positiveInt(maxMarkersPerResourceKey, defaultMaxMarkersPerResource);
+    }
+
+    public int maxMarkersPerProject() {
+        return positiveInt(maxMarkersPerProjectKey, defaultMaxMarkersPerProject);
+    }
+
+
+    private int positiveInt(String key, int defaultValue) {
+        final IPreferenceStore store = SpoofaxPlugin.plugin().getPreferenceStore();
+        final int value = store.getInt(key);
+        // Unset preferences are 0, use the default for those and for invalid values.
+        return value > 0 ? value : defaultValue;
+    }
 }
@@ -1,7 +1,14 @@
 package org.metaborg.spoofax.eclipse.build;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.vfs2.FileName;
 import org.apache.commons.vfs2.FileObject;
-import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.runtime.CoreException;
@@ -12,11 +19,12 @@ import org.metaborg.core.build.BuildInput;
 import org.metaborg.core.build.IBuildOutput;
 import org.metaborg.core.build.IBuilder;
 import org.metaborg.core.messages.IMessage;
+import org.metaborg.core.messages.MessageType;
 import org.metaborg.core.syntax.IParseUnit;
 import org.metaborg.core.transform.ITransformUnit;
 import org.metaborg.spoofax.eclipse.processing.Progress;
-import org.metaborg.spoofax.eclipse.project.EclipseProject;
 import org.metaborg.spoofax.eclipse.resource.IEclipseResourceService;
+import org.metaborg.spoofax.eclipse.util.MarkerDescription;
 import org.metaborg.spoofax.eclipse.util.MarkerUtils;
 import org.metaborg.spoofax.eclipse.util.Nullable;
 import org.metaborg.util.Ref;
@@ -25,11 +33,16 @@ import org.metaborg.util.log.LoggerUtils;
 import org.metaborg.util.task.ICancel;
 import org.metaborg.util.task.IProgress;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 public class BuildRunnable<P extends IParseUnit, A extends IAnalyzeUnit, AU extends IAnalyzeUnitUpdate, T extends ITransformUnit<?>>
     implements IWorkspaceRunnable {
     private static final ILogger logger = LoggerUtils.logger(BuildRunnable.class);
 
     private final IEclipseResourceService resourceService;
+    private final MarkerOverflow markerOverflow;
     private final IBuilder<P, A, AU, T> builder;
     private final BuildInput input;
     private final ICancel cancel;
@@ -38,9 +51,11 @@ public class BuildRunnable<P extends IParseUnit, A extends IAnalyzeUnit, AU exte
     private @Nullable IProgress progress;
 
 
-    public BuildRunnable(IEclipseResourceService resourceService, IBuilder<P, A, AU, T> builder, BuildInput input,
-        @Nullable IProgress progress, ICancel cancel, Ref<IBuildOutput<P, A, AU, T>> outputRef) {
+    public BuildRunnable(IEclipseResourceService resourceService, MarkerOverflow markerOverflow,
+        IBuilder<P, A, AU, T> builder, BuildInput input, @Nullable IProgress progress, ICancel cancel,
+        Ref<IBuildOutput<P, A, AU, T>> outputRef) {
         this.resourceService = resourceService;
+        this.markerOverflow = markerOverflow;
         this.builder = builder;
         this.input = input;
         this.cancel = cancel;
@@ -62,21 +77,18 @@ public class BuildRunnable<P extends IParseUnit, A extends IAnalyzeUnit, AU exte
             return;
         }
 
-        final IProject eclipseProject = ((EclipseProject) input.project).eclipseProject;
-        MarkerUtils.clearAll(eclipseProject);
+        // Group messages per resource, such that each resource is unresolved once, and markers are updated per
+        // resource such that unchanged messages keep their markers.
+        final Map<FileName, ResourceMessages> resourceMessages = Maps.newLinkedHashMap();
+
+        resourceMessages(resourceMessages, input.project.location()).updateAll();
 
         for(FileObject resource : output.changedResources()) {
             if(output.includedResources().contains(resource.getName())) {
                 // Don't clear markers for included resources.
                 continue;
             }
-
-            final IResource eclipseResource = resourceService.unresolve(resource);
-            if(eclipseResource == null) {
-                logger.debug("Cannot clear markers for {}, resource is not in the Eclipse workspace", resource);
-                continue;
-            }
-            MarkerUtils.clearAll(eclipseResource);
+            resourceMessages(resourceMessages, resource).updateAll();
         }
 
         for(P result : output.parseResults()) {
@@ -90,12 +102,7 @@ public class BuildRunnable<P extends IParseUnit, A extends IAnalyzeUnit, AU exte
                 if(resource == null) {
                     continue;
                 }
-                final IResource eclipseResource = resourceService.unresolve(resource);
-                if(eclipseResource == null) {
-                    logger.debug("Cannot create marker for {}, resource is not in the Eclipse workspace", resource);
-                    continue;
-                }
-                MarkerUtils.createMarker(eclipseResource, message);
+                resourceMessages(resourceMessages, resource).messages.add(message);
             }
         }
 
@@ -116,12 +123,7 @@ public class BuildRunnable<P extends IParseUnit, A extends IAnalyzeUnit, AU exte
                     // resources.
                     continue;
                 }
-                final IResource eclipseResource = resourceService.unresolve(resource);
-                if(eclipseResource == null) {
-                    logger.debug("Cannot create marker for {}, resource is not in the Eclipse workspace", resource);
-                    continue;
-                }
-                MarkerUtils.createMarker(eclipseResource, message);
+                resourceMessages(resourceMessages, resource).messages.add(message);
             }
         }
 
@@ -131,16 +133,9 @@ public class BuildRunnable<P extends IParseUnit, A extends IAnalyzeUnit, AU exte
                 // Don't create markers for included resources.
                 continue;
             }
-            final IResource eclipseResource = resourceService.unresolve(resource);
-            if(eclipseResource == null) {
-                logger.debug("Cannot clear or create markers for {}, resource is not in the Eclipse workspace",
-                    resource);
-                continue;
-            }
-            MarkerUtils.clearAnalysis(eclipseResource);
-            for(IMessage message : update.messages()) {
-                MarkerUtils.createMarker(eclipseResource, message);
-            }
+            final ResourceMessages messages = resourceMessages(resourceMessages, resource);
+            messages.types.add(MessageType.ANALYSIS);
+            Iterables.addAll(messages.messages, update.messages());
         }
 
         for(IMessage message : output.extraMessages()) {
@@ -149,15 +144,98 @@ public class BuildRunnable<P extends IParseUnit, A extends IAnalyzeUnit, AU exte
                 // Don't create markers for included resources.
                 continue;
             }
+            resourceMessages(resourceMessages, resource).messages.add(message);
+        }
+
+        // Unresolve resources and describe markers in parallel, which does not modify the workspace.
+        final List<ResourceMarkers> resourceMarkers =
+            resourceMessages.values().parallelStream().map(this::resourceMarkers).collect(Collectors.toList());
 
-            final IResource eclipseResource = resourceService.unresolve(resource);
-            if(eclipseResource == null) {
-                logger.debug("Cannot create marker for {}, resource is not in the Eclipse workspace", resource);
+        // Update markers sequentially, in a batch per resource. Limit the number of markers per resource and per
+        // project, to prevent floods of messages from bloating the workspace.
+        final int maxPerResource = markerOverflow.maxPerResource();
+        int remaining = markerOverflow.maxPerProject();
+        for(ResourceMarkers markers : resourceMarkers) {
+            if(markers == null) {
                 continue;
             }
-            MarkerUtils.createMarker(eclipseResource, message);
+            if(cancel.cancelled()) {
+                return;
+            }
+            final int max = Math.max(0, Math.min(maxPerResource, remaining));
+            final List<MarkerDescription> descriptions =
+                markerOverflow.limit(markers.source, markers.messages, markers.descriptions, max);
+            remaining -= Math.min(max, markers.descriptions.size());
+            MarkerUtils.updateMarkers(markers.eclipseResource, descriptions, markers.types);
         }
 
         outputRef.set(output);
     }
+
+
+    private static ResourceMessages resourceMessages(Map<FileName, ResourceMessages> resourceMessages,
+        FileObject resource) {
+        final FileName name = resource.getName();
+        ResourceMessages messages = resourceMessages.get(name);
+        if(messages == null) {
+            messages = new ResourceMessages(resource);
+            resourceMessages.put(name, messages);
+        }
+        return messages;
+    }
+
+    private @Nullable ResourceMarkers resourceMarkers(ResourceMessages messages) {
+        final IResource eclipseResource = resourceService.unresolve(messages.resource);
+        if(eclipseResource == null) {
+            logger.debug("Cannot update markers for {}, resource is not in the Eclipse workspace", messages.resource);
+            return null;
+        }
+        final List<MarkerDescription> descriptions = Lists.newArrayListWithCapacity(messages.messages.size());
+        for(IMessage message : messages.messages) {
+            descriptions.add(MarkerUtils.description(message));
+        }
+        final MessageType[] types = messages.types.toArray(new MessageType[messages.types.size()]);
+        return new ResourceMarkers(messages.resource, eclipseResource, messages.messages, descriptions, types);
+    }
+
+
+    /**
+     * Messages of a resource, and the message types of markers that are updated to those messages.
+     */
+    private static final class ResourceMessages {
+        public final FileObject resource;
+        public final Set<MessageType> types = EnumSet.noneOf(MessageType.class);
+        public final List<IMessage> messages = Lists.newArrayList();
+
+
+        public ResourceMessages(FileObject resource) {
+            this.resource = resource;
+        }
+
+
+        public void updateAll() {
+            Collections.addAll(types, MessageType.values());
+        }
+    }
+
+    /**
+     * Messages of a resource with descriptions of their markers, and the message types of markers to update.
+     */
+    private static final class ResourceMarkers {
+        public final FileObject source;
+        public final IResource eclipseResource;
+        public final List<IMessage> messages;
+        public final List<MarkerDescription> descriptions;
+        public final MessageType[] types;
+
+
+        public ResourceMarkers(FileObject source, IResource eclipseResource, List<IMessage> messages,
+            List<MarkerDescription> descriptions, MessageType[] types) {
+            this.source = source;
+            this.eclipseResource = eclipseResource;
+            this.messages = messages;
+            this.descriptions = descriptions;
+            this.types = types;
+        }
+    }
 }
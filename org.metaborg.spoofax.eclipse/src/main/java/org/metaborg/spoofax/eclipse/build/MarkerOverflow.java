@@ -0,0 +1,166 @@
+package org.metaborg.spoofax.eclipse.build;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.Job;
+import org.metaborg.core.messages.IMessage;
+import org.metaborg.spoofax.eclipse.SpoofaxPreferences;
+import org.metaborg.spoofax.eclipse.resource.IEclipseResourceService;
+import org.metaborg.spoofax.eclipse.util.MarkerDescription;
+import org.metaborg.spoofax.eclipse.util.MarkerUtils;
+import org.metaborg.spoofax.eclipse.util.StatusUtils;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+
+/**
+ * Limits the number of markers that builds create per resource and per project, to prevent floods of messages from
+ * bloating the workspace. Messages that overflow the limit are replaced by a single summary marker, and retained in
+ * memory until the resource is opened in an editor, at which point markers for them are created with
+ * {@link #materialize(FileObject)}.
+ */
+public class MarkerOverflow {
+    private static final ILogger logger = LoggerUtils.logger(MarkerOverflow.class);
+
+    private final IEclipseResourceService resourceService;
+    private final SpoofaxPreferences preferences;
+
+    private final ConcurrentMap<FileName, Overflow> overflows = new ConcurrentHashMap<>();
+
+
+    @Inject public MarkerOverflow(IEclipseResourceService resourceService, SpoofaxPreferences preferences) {
+        this.resourceService = resourceService;
+        this.preferences = preferences;
+    }
+
+
+    /**
+     * @return Maximum number of markers that a build creates per resource.
+     */
+    public int maxPerResource() {
+        return preferences.maxMarkersPerResource();
+    }
+
+    /**
+     * @return Maximum number of markers that a build creates per project.
+     */
+    public int maxPerProject() {
+        return preferences.maxMarkersPerProject();
+    }
+
+    /**
+     * Limits the markers of given resource to given maximum. Keeps the markers of the most severe messages, and
+     * replaces the others by a summary marker. Overflowing messages replace earlier retained messages of the resource.
+     *
+     * @param resource
+     *            Resource the markers are for.
+     * @param messages
+     *            Messages of the resource.
+     * @param descriptions
+     *            Descriptions of the markers of given messages, in the same order.
+     * @param max
+     *            Maximum number of markers to keep, excluding the summary marker.
+     * @return Descriptions of the markers to create.
+     */
+    public List<MarkerDescription> limit(FileObject resource, List<IMessage> messages,
+        List<MarkerDescription> descriptions, int max) {
+        final FileName name = resource.getName();
+        if(messages.size() <= max) {
+            overflows.remove(name);
+            return descriptions;
+        }
+
+        final List<Integer> order = Lists.newArrayListWithCapacity(messages.size());
+        for(int i = 0; i < messages.size(); ++i) {
+            order.add(i);
+        }
+        // Stable sort, most severe messages first.
+        Collections.sort(order, Comparator
+            .comparingInt((Integer i) -> MarkerUtils.severity(messages.get(i).severity())).reversed());
+
+        final List<MarkerDescription> limited = Lists.newArrayListWithCapacity(max + 1);
+        for(int i = 0; i < max; ++i) {
+            limited.add(descriptions.get(order.get(i)));
+        }
+        final List<IMessage> overflowMessages = Lists.newArrayListWithCapacity(messages.size() - max);
+        for(int i = max; i < messages.size(); ++i) {
+            overflowMessages.add(messages.get(order.get(i)));
+        }
+
+        final IMessage mostSevere = overflowMessages.get(0);
+        final String text = logger.format(
+            "{} more messages are not shown as markers, open the file in an editor to show them",
+            overflowMessages.size());
+        final MarkerDescription summary =
+            MarkerUtils.description(mostSevere.type(), mostSevere.severity(), text, null);
+        limited.add(summary);
+
+        overflows.put(name, new Overflow(overflowMessages, summary));
+        logger.debug("Limited markers of {} to {}, retained {} messages", resource, max, overflowMessages.size());
+        return limited;
+    }
+
+    /**
+     * Creates markers for the retained overflowing messages of given resource, and removes its summary marker. Does
+     * nothing if no messages are retained for given resource.
+     *
+     * @param resource
+     *            Resource to create markers for.
+     */
+    public void materialize(FileObject resource) {
+        final FileName name = resource.getName();
+        final Overflow overflow = overflows.remove(name);
+        if(overflow == null) {
+            return;
+        }
+        final IResource eclipseResource = resourceService.unresolve(resource);
+        if(eclipseResource == null) {
+            return;
+        }
+
+        final Job job = new WorkspaceJob("Creating remaining markers for " + resource) {
+            @Override public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException {
+                // Skip if the resource was removed, or built again and retained new messages since.
+                if(!eclipseResource.exists() || overflows.containsKey(name)) {
+                    return StatusUtils.success();
+                }
+                MarkerUtils.deleteMarkers(eclipseResource, overflow.summary);
+                for(IMessage message : overflow.messages) {
+                    if(monitor.isCanceled()) {
+                        return StatusUtils.cancel();
+                    }
+                    MarkerUtils.createMarker(eclipseResource, message);
+                }
+                return StatusUtils.success();
+            }
+        };
+        job.setRule(eclipseResource);
+        job.setSystem(true);
+        job.schedule();
+    }
+
+
+    private static final class Overflow {
+        public final List<IMessage> messages;
+        public final MarkerDescription summary;
+
+
+        public Overflow(List<IMessage> messages, MarkerDescription summary) {
+            this.messages = messages;
+            this.summary = summary;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.metaborg.spoofax.eclipse.build;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.core.resources.IResourceDelta;
+import org.metaborg.core.build.dependency.MissingDependencies;
+import org.metaborg.core.project.IProject;
+import org.metaborg.spoofax.eclipse.project.EclipseProjectService;
+import org.metaborg.spoofax.eclipse.util.Nullable;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+
+/**
+ * Caches the Metaborg project and the dependency check result of Eclipse projects between builds. Entries are
+ * invalidated when the configuration file of a project changes, and all entries are invalidated when languages are
+ * added, reloaded, or removed.
+ */
+public class ProjectBuildCache {
+    private static final ILogger logger = LoggerUtils.logger(ProjectBuildCache.class);
+
+    private final ConcurrentMap<org.eclipse.core.resources.IProject, Entry> entries = new ConcurrentHashMap<>();
+
+
+    /**
+     * @return Cached project and dependency check result of given Eclipse project, or null if not cached.
+     */
+    public @Nullable Entry get(org.eclipse.core.resources.IProject eclipseProject) {
+        return entries.get(eclipseProject);
+    }
+
+    /**
+     * Caches the project and dependency check result of given Eclipse project.
+     */
+    public void put(org.eclipse.core.resources.IProject eclipseProject, IProject project,
+        MissingDependencies missing) {
+        entries.put(eclipseProject, new Entry(project, missing));
+    }
+
+    /**
+     * Invalidates the cache entry of given Eclipse project if given delta changes its configuration file, or if there
+     * is no delta.
+     */
+    public void invalidate(org.eclipse.core.resources.IProject eclipseProject, @Nullable IResourceDelta delta) {
+        if(delta == null || delta.findMember(EclipseProjectService.configPath) != null) {
+            invalidate(eclipseProject);
+        }
+    }
+
+    /**
+     * Invalidates the cache entry of given Eclipse project.
+     */
+    public void invalidate(org.eclipse.core.resources.IProject eclipseProject) {
+        if(entries.remove(eclipseProject) != null) {
+            logger.trace("Invalidated cached project and dependencies of {}", eclipseProject);
+        }
+    }
+
+    /**
+     * Invalidates all cache entries, for example when the set of loaded languages changes.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+
+    public static final class Entry {
+        public final IProject project;
+        public final MissingDependencies missing;
+
+
+        public Entry(IProject project, MissingDependencies missing) {
+            this.project = project;
+            this.missing = missing;
+        }
+    }
+}
@@ -4,12 +4,17 @@ import java.util.Collection;
 import java.util.Map;
 
 import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSelectInfo;
+import org.apache.commons.vfs2.FileSelector;
 import org.apache.commons.vfs2.FileSystemException;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.Job;
 import org.metaborg.core.MetaborgException;
 import org.metaborg.core.action.CompileGoal;
 import org.metaborg.core.analysis.IAnalyzeUnit;
@@ -39,6 +44,7 @@ import org.metaborg.spoofax.eclipse.SpoofaxPreferences;
 import org.metaborg.spoofax.eclipse.processing.Monitor;
 import org.metaborg.spoofax.eclipse.resource.IEclipseResourceService;
 import org.metaborg.spoofax.eclipse.util.Nullable;
+import org.metaborg.spoofax.eclipse.util.StatusUtils;
 import org.metaborg.util.log.ILogger;
 import org.metaborg.util.log.LoggerUtils;
 
@@ -52,6 +58,15 @@ public abstract class ProjectBuilder<P extends IParseUnit, A extends IAnalyzeUni
 
     public static final String id = SpoofaxPlugin.id + ".builder";
 
+    /**
+     * Time to wait for subsequent auto builds before building coalesced changes.
+     */
+    private static final long coalesceWindowMs = 500;
+    /**
+     * Maximum time that changes of auto builds are postponed.
+     */
+    private static final long coalesceMaxLatencyMs = 3000;
+
     private final IEclipseResourceService resourceService;
     private final ILanguagePathService languagePathService;
     private final IProjectService projectService;
@@ -59,9 +74,15 @@ public abstract class ProjectBuilder<P extends IParseUnit, A extends IAnalyzeUni
     private final IProcessorRunner<P, A, AU, T> processorRunner;
 
     private final SpoofaxPreferences preferences;
+    private final ProjectBuildCache buildCache;
 
+    // Build states are kept in memory only, they are not serializable and refer to loaded language implementations.
     private final Map<org.eclipse.core.resources.IProject, BuildState> states = Maps.newHashMap();
 
+    private long coalesceStart = -1;
+    private long lastAutoBuild = -1;
+    private @Nullable Job coalesceJob;
+
 
     public ProjectBuilder(IProcessorRunner<P, A, AU, T> processorRunner) {
         this.processorRunner = processorRunner;
@@ -75,6 +96,7 @@ public abstract class ProjectBuilder<P extends IParseUnit, A extends IAnalyzeUni
         this.dependencyService = spoofax.dependencyService;
 
         this.preferences = injector.getInstance(SpoofaxPreferences.class);
+        this.buildCache = injector.getInstance(ProjectBuildCache.class);
     }
 
 
@@ -90,15 +112,34 @@ public abstract class ProjectBuilder<P extends IParseUnit, A extends IAnalyzeUni
         }
 
         final org.eclipse.core.resources.IProject eclipseProject = getProject();
-        final FileObject location = resourceService.resolve(eclipseProject);
-        final IProject project = projectService.get(location);
-        if(project == null) {
-            logger.error("Cannot build project, cannot retrieve Metaborg project for {}", eclipseProject);
-            cancel(monitor);
+        if(kind == AUTO_BUILD && getDelta(eclipseProject) != null && coalesce(eclipseProject)) {
+            logger.trace("Postponing auto build of {} to coalesce it with subsequent changes", eclipseProject);
             return null;
         }
+        stopCoalescing();
+
+        final IResourceDelta delta = kind == FULL_BUILD ? null : getDelta(eclipseProject);
+
+        // Reuse the project and dependency check result of earlier builds, unless the configuration changed.
+        buildCache.invalidate(eclipseProject, delta);
+        final ProjectBuildCache.Entry cached = buildCache.get(eclipseProject);
+        final IProject project;
+        final MissingDependencies missing;
+        if(cached != null) {
+            project = cached.project;
+            missing = cached.missing;
+        } else {
+            final FileObject location = resourceService.resolve(eclipseProject);
+            project = projectService.get(location);
+            if(project == null) {
+                logger.error("Cannot build project, cannot retrieve Metaborg project for {}", eclipseProject);
+                cancel(monitor);
+                return null;
+            }
+            missing = dependencyService.checkDependencies(project);
+            buildCache.put(eclipseProject, project, missing);
+        }
 
-        final MissingDependencies missing = dependencyService.checkDependencies(project);
         if(!missing.empty()) {
             logger.error("Cannot build project {}, some dependencies are missing.\n{}", project, missing.toString());
             cancel(monitor);
@@ -107,15 +148,10 @@ public abstract class ProjectBuilder<P extends IParseUnit, A extends IAnalyzeUni
 
         try {
             final ITask<? extends IBuildOutput<P, A, AU, T>> task;
-            if(kind == FULL_BUILD) {
+            if(delta == null) {
                 task = fullBuild(project, monitor);
             } else {
-                final IResourceDelta delta = getDelta(eclipseProject);
-                if(delta == null) {
-                    task = fullBuild(project, monitor);
-                } else {
-                    task = incrBuild(project, states.get(eclipseProject), delta, monitor);
-                }
+                task = incrBuild(project, states.get(eclipseProject), delta, monitor);
             }
 
             task.schedule().block();
@@ -163,8 +199,20 @@ public abstract class ProjectBuilder<P extends IParseUnit, A extends IAnalyzeUni
     private ITask<? extends IBuildOutput<P, A, AU, T>> incrBuild(IProject project, @Nullable BuildState state,
         IResourceDelta delta, IProgressMonitor monitor) throws CoreException, InterruptedException, MetaborgException {
         final Collection<ResourceChange> changes = Lists.newLinkedList();
+        final FileObject location = project.location();
+        final FileSelector selector = new SpoofaxIgnoresSelector();
         delta.accept(new IResourceDeltaVisitor() {
             @Override public boolean visit(IResourceDelta innerDelta) throws CoreException {
+                final IResource resource = innerDelta.getResource();
+                // Prune derived and team private resources, and folders ignored by the selector, such that their
+                // subtrees are not visited and resolved.
+                if(resource.isDerived() || resource.isTeamPrivateMember()) {
+                    return false;
+                }
+                if(resource.getType() == IResource.FOLDER && !traverse(selector, location, resource)) {
+                    return false;
+                }
+
                 final ResourceChange change = resourceService.resolve(innerDelta);
                 if(change != null) {
                     changes.add(change);
@@ -191,6 +239,81 @@ public abstract class ProjectBuilder<P extends IParseUnit, A extends IAnalyzeUni
         return processorRunner.build(input, spxMonitor, spxMonitor);
     }
 
+    /**
+     * Postpones an auto build, such that its changes are built together with the changes of subsequent auto builds,
+     * instead of in many small builds when many resources change in succession. The last built state is remembered, so
+     * the next build receives a delta with all changes since the last build. Changes are postponed for at most
+     * {@link #coalesceMaxLatencyMs}. An auto build that does not follow another auto build within
+     * {@link #coalesceWindowMs} is not postponed, such that single changes are built immediately.
+     *
+     * @return True if the auto build was postponed, false if it must be executed now.
+     */
+    private synchronized boolean coalesce(final org.eclipse.core.resources.IProject eclipseProject) {
+        final long now = System.currentTimeMillis();
+        final long previousAutoBuild = lastAutoBuild;
+        lastAutoBuild = now;
+        if(coalesceStart < 0) {
+            if(previousAutoBuild < 0 || now - previousAutoBuild >= coalesceWindowMs) {
+                return false;
+            }
+            coalesceStart = now;
+        }
+        final long elapsed = now - coalesceStart;
+        if(elapsed >= coalesceMaxLatencyMs) {
+            return false;
+        }
+
+        rememberLastBuiltState();
+        if(coalesceJob == null) {
+            coalesceJob = new Job("Building coalesced changes of " + eclipseProject.getName()) {
+                @Override protected IStatus run(IProgressMonitor monitor) {
+                    try {
+                        eclipseProject.build(INCREMENTAL_BUILD, id, null, monitor);
+                        return StatusUtils.success();
+                    } catch(CoreException e) {
+                        return StatusUtils.error("Building coalesced changes failed", e);
+                    }
+                }
+            };
+            coalesceJob.setRule(eclipseProject.getWorkspace().getRuleFactory().buildRule());
+            coalesceJob.setSystem(true);
+        }
+        coalesceJob.cancel();
+        coalesceJob.schedule(Math.min(coalesceWindowMs, coalesceMaxLatencyMs - elapsed));
+        return true;
+    }
+
+    private synchronized void stopCoalescing() {
+        coalesceStart = -1;
+        // Do not cancel the coalesce job when it runs this build, cancelling it would cancel the monitor of this build.
+        if(coalesceJob != null && Job.getJobManager().currentJob() != coalesceJob) {
+            coalesceJob.cancel();
+        }
+    }
+
+    private boolean traverse(FileSelector selector, final FileObject location, IResource folder) {
+        final FileObject resource = resourceService.resolve(folder);
+        final int depth = folder.getProjectRelativePath().segmentCount();
+        try {
+            return selector.traverseDescendents(new FileSelectInfo() {
+                @Override public FileObject getBaseFolder() {
+                    return location;
+                }
+
+                @Override public FileObject getFile() {
+                    return resource;
+                }
+
+                @Override public int getDepth() {
+                    return depth;
+                }
+            });
+        } catch(Exception e) {
+            logger.error("Cannot determine if {} is ignored, visiting it", e, resource);
+            return true;
+        }
+    }
+
     private void cancel(IProgressMonitor monitor) {
         rememberLastBuiltState();
         monitor.setCanceled(true);
@@ -198,6 +321,7 @@ public abstract class ProjectBuilder<P extends IParseUnit, A extends IAnalyzeUni
 
 
     @Override protected void clean(IProgressMonitor monitor) throws CoreException {
+        stopCoalescing();
         final org.eclipse.core.resources.IProject eclipseProject = getProject();
         final FileObject location = resourceService.resolve(eclipseProject);
         final IProject project = projectService.get(location);
@@ -216,6 +340,7 @@ public abstract class ProjectBuilder<P extends IParseUnit, A extends IAnalyzeUni
             logger.error("Cannot clean project {}; cleaning failed unexpectedly", e, project);
         } finally {
             forgetLastBuiltState();
+            buildCache.invalidate(eclipseProject);
             states.remove(eclipseProject);
         }
     }
@@ -0,0 +1,104 @@
+package org.metaborg.spoofax.eclipse.editor;
+
+import org.eclipse.jface.text.DocumentEvent;
+import org.metaborg.spoofax.eclipse.util.Nullable;
+
+/**
+ * Damaged region of a document, relative to an earlier version of its text. The region starting at {@link #offset()}
+ * with length {@link #oldLength()} in the old text has been replaced by a region of length {@link #newLength()} in the
+ * new text. Text outside of the damaged region is unchanged, apart from being shifted by {@link #delta()}.
+ */
+public final class DocumentDamage {
+    private final int offset;
+    private final int oldLength;
+    private final int newLength;
+
+
+    public DocumentDamage(int offset, int oldLength, int newLength) {
+        this.offset = offset;
+        this.oldLength = oldLength;
+        this.newLength = newLength;
+    }
+
+
+    /**
+     * @return Start offset of the damaged region, which is the same in the old and new text.
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * @return Length of the damaged region in the old text.
+     */
+    public int oldLength() {
+        return oldLength;
+    }
+
+    /**
+     * @return Length of the damaged region in the new text.
+     */
+    public int newLength() {
+        return newLength;
+    }
+
+    /**
+     * @return Difference in length between the new and old text.
+     */
+    public int delta() {
+        return newLength - oldLength;
+    }
+
+    /**
+     * @return True if the damage does not change the text at all. False otherwise.
+     */
+    public boolean isEmpty() {
+        return oldLength == 0 && newLength == 0;
+    }
+
+
+    /**
+     * Merges given document event into given damage.
+     *
+     * @param damage
+     *            Damage accumulated so far, or null if the document has not been damaged since the last parse.
+     * @param event
+     *            Document event to merge. Its offset and length are relative to the text after applying given damage.
+     * @return Damage covering both given damage and document event.
+     */
+    public static DocumentDamage merge(@Nullable DocumentDamage damage, DocumentEvent event) {
+        final String text = event.getText();
+        return merge(damage, event.getOffset(), event.getLength(), text == null ? 0 : text.length());
+    }
+
+    /**
+     * Merges given replacement into given damage.
+     *
+     * @param damage
+     *            Damage accumulated so far, or null if the document has not been damaged yet.
+     * @param offset
+     *            Offset of the replacement, relative to the text after applying given damage.
+     * @param length
+     *            Length of the replaced region, relative to the text after applying given damage.
+     * @param newLength
+     *            Length of the replacement.
+     * @return Damage covering both given damage and replacement.
+     */
+    public static DocumentDamage merge(@Nullable DocumentDamage damage, int offset, int length, int newLength) {
+        if(damage == null) {
+            return new DocumentDamage(offset, length, newLength);
+        }
+
+        final int start = Math.min(damage.offset, offset);
+        // End of the combined region in the current text, before applying the replacement.
+        final int end = Math.max(damage.offset + damage.newLength, offset + length);
+        final int oldEnd = end - damage.delta();
+        final int newEnd = end + newLength - length;
+        return new DocumentDamage(start, oldEnd - start, newEnd - start);
+    }
+
+
+    @Override public String toString() {
+        return "DocumentDamage[offset = " + offset + ", oldLength = " + oldLength + ", newLength = " + newLength + "]";
+    }
+}
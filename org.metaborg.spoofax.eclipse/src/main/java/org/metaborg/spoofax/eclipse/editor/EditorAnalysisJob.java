@@ -0,0 +1,165 @@
+package org.metaborg.spoofax.eclipse.editor;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.ui.IEditorInput;
+import org.metaborg.core.MetaborgException;
+import org.metaborg.core.analysis.AnalysisException;
+import org.metaborg.core.analysis.AnalyzeResult;
+import org.metaborg.core.analysis.IAnalysisService;
+import org.metaborg.core.analysis.IAnalyzeResult;
+import org.metaborg.core.analysis.IAnalyzeUnit;
+import org.metaborg.core.analysis.IAnalyzeUnitUpdate;
+import org.metaborg.core.context.IContext;
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.core.messages.MessageType;
+import org.metaborg.core.processing.analyze.IAnalysisResultRequester;
+import org.metaborg.core.processing.analyze.IAnalysisResultUpdater;
+import org.metaborg.core.syntax.IInputUnit;
+import org.metaborg.core.syntax.IParseUnit;
+import org.metaborg.spoofax.eclipse.processing.Monitor;
+import org.metaborg.spoofax.eclipse.resource.IEclipseResourceService;
+import org.metaborg.spoofax.eclipse.util.MarkerUtils;
+import org.metaborg.spoofax.eclipse.util.StatusUtils;
+import org.metaborg.util.concurrent.IClosableLock;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Analysis stage of an editor update, scheduled by {@link EditorUpdateJob} after parsing succeeded. Requires a Stratego
+ * read lock and the lock of its context as scheduling rule, whereas the parsing stage only requires the editor.
+ */
+public class EditorAnalysisJob<I extends IInputUnit, P extends IParseUnit, A extends IAnalyzeUnit, AU extends IAnalyzeUnitUpdate, F>
+    extends EditorJob<F> {
+    private static final ILogger logger = LoggerUtils.logger(EditorAnalysisJob.class);
+
+    private final IEclipseResourceService resourceService;
+    private final IAnalysisService<P, A, AU> analyzer;
+    private final IAnalysisResultUpdater<P, A> analysisResultProcessor;
+    private final IAnalysisResultRequester<I, A> analysisResultRequester;
+    private final IEditorUpdateScheduler updateScheduler;
+
+    private final IContext context;
+    private final ILanguageImpl langImpl;
+    private final P parseResult;
+    private final boolean changed;
+
+
+    public EditorAnalysisJob(IEclipseResourceService resourceService, IAnalysisService<P, A, AU> analyzer,
+        IAnalysisResultUpdater<P, A> analysisResultProcessor, IAnalysisResultRequester<I, A> analysisResultRequester,
+        IEditorUpdateScheduler updateScheduler, IEclipseEditor<F> editor, IEditorInput input,
+        IResource eclipseResource, FileObject resource, long modificationStamp, IContext context,
+        ILanguageImpl langImpl, P parseResult, boolean changed) {
+        super("Analyzing Spoofax editor for " + resource.toString(), editor, input, eclipseResource, resource,
+            modificationStamp);
+        setPriority(Job.SHORT);
+
+        this.resourceService = resourceService;
+        this.analyzer = analyzer;
+        this.analysisResultProcessor = analysisResultProcessor;
+        this.analysisResultRequester = analysisResultRequester;
+        this.updateScheduler = updateScheduler;
+
+        this.context = context;
+        this.langImpl = langImpl;
+        this.parseResult = parseResult;
+        this.changed = changed;
+    }
+
+
+    @Override protected IStatus update(IWorkspace workspace, IProgressMonitor progressMonitor)
+        throws MetaborgException, CoreException, InterruptedException, ThreadDeath {
+        final SubMonitor monitor = SubMonitor.convert(progressMonitor, 55);
+        final Monitor spxMonitor = new Monitor(monitor);
+
+        if(spxMonitor.cancelled())
+            return StatusUtils.cancel();
+        spxMonitor.setDescription("Analyzing");
+
+        final IAnalyzeResult<A, AU> analysisResult;
+        final A result = analysisResultRequester.get(resource);
+        if(changed || result == null) {
+            final long analysisStart = System.currentTimeMillis();
+            analysisResult = analyze(spxMonitor.subProgress(50));
+            updateScheduler.analyzed(resource, langImpl, System.currentTimeMillis() - analysisStart);
+        } else {
+            analysisResult = new AnalyzeResult<>(result, context);
+        }
+
+        if(spxMonitor.cancelled())
+            return StatusUtils.cancel();
+        spxMonitor.setDescription("Processing analysis messages");
+        analysisMessages(workspace, spxMonitor.subProgress(5), analysisResult);
+
+        return StatusUtils.success();
+    }
+
+
+    private IAnalyzeResult<A, AU> analyze(Monitor monitor)
+        throws AnalysisException, InterruptedException, ThreadDeath {
+        final IAnalyzeResult<A, AU> analysisResult;
+        try(IClosableLock lock = context.write()) {
+            analysisResultProcessor.invalidate(parseResult.source());
+            try {
+                analysisResult = analyzer.analyze(parseResult, context, monitor, monitor);
+            } catch(AnalysisException e) {
+                analysisResultProcessor.error(resource, e);
+                throw e;
+            } catch(ThreadDeath e) {
+                analysisResultProcessor.error(resource, new AnalysisException(context, "Editor update job killed", e));
+                throw e;
+            }
+            analysisResultProcessor.update(analysisResult.result(), Sets.<FileName>newHashSet());
+        }
+        return analysisResult;
+    }
+
+    private void analysisMessages(IWorkspace workspace, Monitor monitor, final IAnalyzeResult<A, AU> analysisResult)
+        throws CoreException {
+        // Update markers atomically using a workspace runnable, to prevent flashing/jumping markers.
+        final IWorkspaceRunnable analysisMarkerUpdater = new IWorkspaceRunnable() {
+            @Override public void run(IProgressMonitor workspaceMonitor) throws CoreException {
+                if(workspaceMonitor.isCanceled())
+                    return;
+                // Skip messages of the edited resource if the document was changed since, their regions are invalid.
+                if(!stale()) {
+                    MarkerUtils.updateMarkers(eclipseResource, analysisResult.result().messages(),
+                        MessageType.INTERNAL, MessageType.ANALYSIS);
+                }
+
+                for(AU result : analysisResult.updates()) {
+                    if(workspaceMonitor.isCanceled())
+                        return;
+                    final IResource messagesEclipseResource = resourceService.unresolve(result.source());
+                    if(messagesEclipseResource == null) {
+                        // In case the analysis sends an update for a resource that is not an eclipse resource; ignore.
+                        logger.debug("Cannot perform analysis update for resource {}, it is not an Eclipse resource",
+                            result.source());
+                        continue;
+                    }
+                    if(!messagesEclipseResource.exists()) {
+                        // In case the analysis sends an update for a resource that does not exist; ignore.
+                        logger.debug("Cannot perform analysis update for resource {}, since it does not exist",
+                            messagesEclipseResource);
+                        continue;
+                    }
+                    MarkerUtils.updateMarkers(messagesEclipseResource, result.messages(), MessageType.ANALYSIS);
+                }
+            }
+        };
+        // Use the marker rule instead of the resource, which is not contained in the context lock rule of this job.
+        final ISchedulingRule markerRule = workspace.getRuleFactory().markerRule(eclipseResource);
+        workspace.run(analysisMarkerUpdater, markerRule, IWorkspace.AVOID_UPDATE, monitor.eclipseMonitor());
+    }
+}
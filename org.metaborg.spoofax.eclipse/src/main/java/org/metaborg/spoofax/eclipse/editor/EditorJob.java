@@ -0,0 +1,150 @@
+package org.metaborg.spoofax.eclipse.editor;
+
+import java.util.concurrent.CancellationException;
+
+import org.apache.commons.vfs2.FileObject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.ui.IEditorInput;
+import org.metaborg.core.MetaborgException;
+import org.metaborg.core.MetaborgRuntimeException;
+import org.metaborg.core.messages.MessageFactory;
+import org.metaborg.core.messages.MessageType;
+import org.metaborg.spoofax.eclipse.job.ThreadKillerJob;
+import org.metaborg.spoofax.eclipse.util.MarkerUtils;
+import org.metaborg.spoofax.eclipse.util.Nullable;
+import org.metaborg.spoofax.eclipse.util.StatusUtils;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+
+/**
+ * Base class for the stages of an editor update. Each stage is a separate job with its own scheduling rule, such that
+ * a stage of one edit can run concurrently with a different stage of another edit. Handles errors by showing an
+ * internal error marker, and kills the job thread if it does not respond to cancellation.
+ */
+public abstract class EditorJob<F> extends Job {
+    private static final ILogger logger = LoggerUtils.logger(EditorJob.class);
+    private static final long interruptTimeMillis = 5000;
+    private static final long killTimeMillis = 10000;
+
+    protected final IEclipseEditor<F> editor;
+    protected final IEditorInput input;
+    protected final @Nullable IResource eclipseResource;
+    protected final FileObject resource;
+    protected final long modificationStamp;
+
+    private ThreadKillerJob threadKiller;
+
+
+    public EditorJob(String name, IEclipseEditor<F> editor, IEditorInput input, @Nullable IResource eclipseResource,
+        FileObject resource, long modificationStamp) {
+        super(name);
+
+        this.editor = editor;
+        this.input = input;
+        this.eclipseResource = eclipseResource;
+        this.resource = resource;
+        this.modificationStamp = modificationStamp;
+    }
+
+
+    @Override public boolean belongsTo(Object family) {
+        return input.equals(family) || editor.equals(family);
+    }
+
+    @Override protected IStatus run(final IProgressMonitor monitor) {
+        logger.debug("Running '{}'", getName());
+
+        final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+
+        try {
+            final IStatus status = update(workspace, monitor);
+            return status;
+        } catch(MetaborgRuntimeException | MetaborgException | CoreException e) {
+            if(monitor.isCanceled()) {
+                return StatusUtils.cancel();
+            }
+
+            if(eclipseResource != null) {
+                try {
+                    final IWorkspaceRunnable parseMarkerUpdater = new IWorkspaceRunnable() {
+                        @Override public void run(IProgressMonitor workspaceMonitor) throws CoreException {
+                            if(workspaceMonitor.isCanceled())
+                                return;
+                            MarkerUtils.clearAll(eclipseResource);
+                            MarkerUtils.createMarker(eclipseResource,
+                                MessageFactory.newErrorAtTop(resource,
+                                    "Failed to update editor; see the console or error log for more information",
+                                    MessageType.INTERNAL, e));
+                        }
+                    };
+                    // Use the marker rule instead of the resource, which is not contained in the rule of this job.
+                    final ISchedulingRule markerRule = workspace.getRuleFactory().markerRule(eclipseResource);
+                    workspace.run(parseMarkerUpdater, markerRule, IWorkspace.AVOID_UPDATE, monitor);
+                } catch(CoreException e2) {
+                    final String message = logger.format("Failed to show internal error marker for {}", resource);
+                    logger.error(message, e2);
+                    return StatusUtils.silentError(message, e2);
+                }
+            }
+
+            final String message = logger.format("Failed to update editor for {}", resource);
+            logger.error(message, e);
+            return StatusUtils.silentError(message, e);
+        } catch(InterruptedException | CancellationException | ThreadDeath e) {
+            return StatusUtils.cancel();
+        } catch(OperationCanceledException e) {
+            return StatusUtils.cancel();
+        } catch(Throwable e) {
+            final String message = logger.format("Failed to update editor for {}", resource);
+            logger.error(message, e);
+            return StatusUtils.silentError(message, e);
+        } finally {
+            if(threadKiller != null) {
+                threadKiller.cancel();
+            }
+            monitor.done();
+        }
+    }
+
+    @Override protected void canceling() {
+        final Thread thread = getThread();
+        if(thread == null) {
+            return;
+        }
+
+        logger.debug("Cancelling '{}', interrupting in {}ms, killing in {}ms", getName(), interruptTimeMillis,
+            interruptTimeMillis + killTimeMillis);
+        threadKiller = new ThreadKillerJob(thread, killTimeMillis);
+        threadKiller.schedule(interruptTimeMillis);
+    }
+
+
+    /**
+     * Performs this stage of the editor update.
+     */
+    protected abstract IStatus update(IWorkspace workspace, IProgressMonitor monitor)
+        throws MetaborgException, CoreException, InterruptedException, ThreadDeath;
+
+
+    /**
+     * @return True if the document was modified after the editor update was scheduled, such that regions of messages
+     *         are not valid any more. False if it was not, or if it is unknown.
+     */
+    protected boolean stale() {
+        if(modificationStamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP) {
+            return false;
+        }
+        final long currentStamp = editor.modificationStamp();
+        return currentStamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP && currentStamp != modificationStamp;
+    }
+}
@@ -0,0 +1,53 @@
+package org.metaborg.spoofax.eclipse.editor;
+
+import org.apache.commons.vfs2.FileObject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.ui.IEditorInput;
+import org.metaborg.core.MetaborgException;
+import org.metaborg.core.analysis.IAnalyzeUnit;
+import org.metaborg.core.outline.IOutline;
+import org.metaborg.core.outline.IOutlineService;
+import org.metaborg.core.syntax.IParseUnit;
+import org.metaborg.spoofax.eclipse.util.Nullable;
+import org.metaborg.spoofax.eclipse.util.StatusUtils;
+
+/**
+ * Outline stage of an editor update, scheduled by {@link EditorUpdateJob} after parsing succeeded, such that the outline
+ * is created concurrently with styling.
+ */
+public class EditorOutlineJob<P extends IParseUnit, A extends IAnalyzeUnit, F> extends EditorJob<F> {
+    private final IOutlineService<P, A> outlineService;
+
+    private final P parseResult;
+
+
+    public EditorOutlineJob(IOutlineService<P, A> outlineService, IEclipseEditor<F> editor, IEditorInput input,
+        @Nullable IResource eclipseResource, FileObject resource, long modificationStamp, P parseResult) {
+        super("Creating outline for Spoofax editor for " + resource.toString(), editor, input, eclipseResource,
+            resource, modificationStamp);
+        setPriority(Job.SHORT);
+        setSystem(true);
+
+        this.outlineService = outlineService;
+
+        this.parseResult = parseResult;
+    }
+
+
+    @Override protected IStatus update(IWorkspace workspace, IProgressMonitor monitor) throws MetaborgException {
+        if(monitor.isCanceled())
+            return StatusUtils.cancel();
+
+        final IOutline outline = outlineService.outline(parseResult);
+        if(outline == null) {
+            return StatusUtils.success();
+        }
+
+        editor.setOutline(outline, modificationStamp, monitor);
+        return StatusUtils.success();
+    }
+}
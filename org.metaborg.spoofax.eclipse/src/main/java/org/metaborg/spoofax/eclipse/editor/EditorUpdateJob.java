@@ -1,37 +1,28 @@
 package org.metaborg.spoofax.eclipse.editor;
 
-import java.util.concurrent.CancellationException;
-
-import org.apache.commons.vfs2.FileName;
 import org.apache.commons.vfs2.FileObject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRunnable;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
 import org.eclipse.ui.IEditorInput;
 import org.metaborg.core.MetaborgException;
-import org.metaborg.core.MetaborgRuntimeException;
-import org.metaborg.core.analysis.AnalysisException;
-import org.metaborg.core.analysis.AnalyzeResult;
 import org.metaborg.core.analysis.IAnalysisService;
-import org.metaborg.core.analysis.IAnalyzeResult;
 import org.metaborg.core.analysis.IAnalyzeUnit;
 import org.metaborg.core.analysis.IAnalyzeUnitUpdate;
+import org.metaborg.core.context.ContextException;
 import org.metaborg.core.context.IContext;
 import org.metaborg.core.context.IContextService;
 import org.metaborg.core.language.ILanguageIdentifierService;
 import org.metaborg.core.language.ILanguageImpl;
 import org.metaborg.core.language.IdentifiedResource;
-import org.metaborg.core.messages.IMessage;
-import org.metaborg.core.messages.MessageFactory;
 import org.metaborg.core.messages.MessageType;
-import org.metaborg.core.outline.IOutline;
 import org.metaborg.core.outline.IOutlineService;
 import org.metaborg.core.processing.analyze.IAnalysisResultRequester;
 import org.metaborg.core.processing.analyze.IAnalysisResultUpdater;
@@ -48,23 +39,25 @@ import org.metaborg.core.syntax.ISyntaxService;
 import org.metaborg.core.syntax.ParseException;
 import org.metaborg.core.unit.IInputUnitService;
 import org.metaborg.spoofax.core.style.CategorizerValidator;
-import org.metaborg.spoofax.eclipse.job.ThreadKillerJob;
+import org.metaborg.spoofax.eclipse.job.GlobalSchedulingRules;
+import org.metaborg.spoofax.eclipse.language.LanguageReadiness;
 import org.metaborg.spoofax.eclipse.processing.Monitor;
 import org.metaborg.spoofax.eclipse.resource.IEclipseResourceService;
 import org.metaborg.spoofax.eclipse.util.MarkerUtils;
 import org.metaborg.spoofax.eclipse.util.Nullable;
 import org.metaborg.spoofax.eclipse.util.StatusUtils;
-import org.metaborg.util.concurrent.IClosableLock;
 import org.metaborg.util.log.ILogger;
 import org.metaborg.util.log.LoggerUtils;
 
-import com.google.common.collect.Sets;
-
+/**
+ * Parsing stage of an editor update. Parses the text, styles the editor, and shows parse messages. Schedules
+ * {@link EditorOutlineJob} to create the outline concurrently with styling, and {@link EditorAnalysisJob} to analyze
+ * the parse result with its own scheduling rule, such that this stage can run for the next edit while the analysis of
+ * the previous edit is still running.
+ */
 public class EditorUpdateJob<I extends IInputUnit, P extends IParseUnit, A extends IAnalyzeUnit, AU extends IAnalyzeUnitUpdate, F>
-    extends Job {
+    extends EditorJob<F> {
     private static final ILogger logger = LoggerUtils.logger(EditorUpdateJob.class);
-    private static final long interruptTimeMillis = 5000;
-    private static final long killTimeMillis = 10000;
 
     private final IEclipseResourceService resourceService;
     private final ILanguageIdentifierService languageIdentifierService;
@@ -79,19 +72,15 @@ public class EditorUpdateJob<I extends IInputUnit, P extends IParseUnit, A exten
     private final IParseResultUpdater<P> parseResultProcessor;
     private final IAnalysisResultUpdater<P, A> analysisResultProcessor;
     private final IAnalysisResultRequester<I, A> analysisResultRequester;
+    private final GlobalSchedulingRules globalRules;
+    private final LanguageReadiness languageReadiness;
+    private final IEditorUpdateScheduler updateScheduler;
 
-    private final IEclipseEditor<F> editor;
-    private final IEditorInput input;
-    private final @Nullable IResource eclipseResource;
-    private final FileObject resource;
     private final String text;
     private final boolean changed;
     private final boolean instantaneous;
-    private final long analysisDelayMs;
     private final boolean analysis;
 
-    private ThreadKillerJob threadKiller;
-
 
     public EditorUpdateJob(IEclipseResourceService resourceService,
         ILanguageIdentifierService languageIdentifierService, IContextService contextService,
@@ -99,10 +88,11 @@ public class EditorUpdateJob<I extends IInputUnit, P extends IParseUnit, A exten
         IAnalysisService<P, A, AU> analyzer, ICategorizerService<P, A, F> categorizer, IStylerService<F> styler,
         IOutlineService<P, A> outlineService, IParseResultUpdater<P> parseResultProcessor,
         IAnalysisResultUpdater<P, A> analysisResultProcessor, IAnalysisResultRequester<I, A> analysisResultRequester,
+        GlobalSchedulingRules globalRules, LanguageReadiness languageReadiness, IEditorUpdateScheduler updateScheduler,
         IEclipseEditor<F> editor, IEditorInput input, @Nullable IResource eclipseResource, FileObject resource,
-        String text, boolean changed, boolean instantaneous,
-        long analysisDelayMs, boolean analysis) {
-        super("Updating Spoofax editor for " + resource.toString());
+        String text, long modificationStamp, boolean changed, boolean instantaneous, boolean analysis) {
+        super("Updating Spoofax editor for " + resource.toString(), editor, input, eclipseResource, resource,
+            modificationStamp);
         setPriority(Job.SHORT);
 
         this.resourceService = resourceService;
@@ -118,97 +108,33 @@ public class EditorUpdateJob<I extends IInputUnit, P extends IParseUnit, A exten
         this.parseResultProcessor = parseResultProcessor;
         this.analysisResultProcessor = analysisResultProcessor;
         this.analysisResultRequester = analysisResultRequester;
+        this.globalRules = globalRules;
+        this.languageReadiness = languageReadiness;
+        this.updateScheduler = updateScheduler;
 
-        this.editor = editor;
-        this.input = input;
-        this.eclipseResource = eclipseResource;
-        this.resource = resource;
         this.text = text;
         this.changed = changed;
         this.instantaneous = instantaneous;
-        this.analysisDelayMs = analysisDelayMs;
         this.analysis = analysis;
     }
 
 
-    @Override public boolean belongsTo(Object family) {
-        return input.equals(family) || editor.equals(family);
-    }
-
-    @Override protected IStatus run(final IProgressMonitor monitor) {
-        logger.debug("Running editor update job for {}", resource);
-
-        final IWorkspace workspace = ResourcesPlugin.getWorkspace();
-
-        try {
-            final IStatus status = update(workspace, monitor);
-            return status;
-        } catch(MetaborgRuntimeException | MetaborgException | CoreException e) {
-            if(monitor.isCanceled()) {
-                return StatusUtils.cancel();
-            }
-
-            if(eclipseResource != null) {
-                try {
-                    final IWorkspaceRunnable parseMarkerUpdater = new IWorkspaceRunnable() {
-                        @Override public void run(IProgressMonitor workspaceMonitor) throws CoreException {
-                            if(workspaceMonitor.isCanceled())
-                                return;
-                            MarkerUtils.clearAll(eclipseResource);
-                            MarkerUtils.createMarker(eclipseResource,
-                                MessageFactory.newErrorAtTop(resource,
-                                    "Failed to update editor; see the console or error log for more information",
-                                    MessageType.INTERNAL, e));
-                        }
-                    };
-                    workspace.run(parseMarkerUpdater, eclipseResource, IWorkspace.AVOID_UPDATE, monitor);
-                } catch(CoreException e2) {
-                    final String message = logger.format("Failed to show internal error marker for {}", resource);
-                    logger.error(message, e2);
-                    return StatusUtils.silentError(message, e2);
-                }
-            }
-
-            final String message = logger.format("Failed to update editor for {}", resource);
-            logger.error(message, e);
-            return StatusUtils.silentError(message, e);
-        } catch(InterruptedException | CancellationException | ThreadDeath e) {
-            return StatusUtils.cancel();
-        } catch(OperationCanceledException e) {
-            return StatusUtils.cancel();
-        } catch(Throwable e) {
-            final String message = logger.format("Failed to update editor for {}", resource);
-            logger.error(message, e);
-            return StatusUtils.silentError(message, e);
-        } finally {
-            if(threadKiller != null) {
-                threadKiller.cancel();
-            }
-            monitor.done();
-        }
-    }
-
-    @Override protected void canceling() {
-        final Thread thread = getThread();
-        if(thread == null) {
-            return;
-        }
-
-        logger.debug("Cancelling editor update job for {}, interrupting in {}ms, killing in {}ms", resource,
-            interruptTimeMillis, interruptTimeMillis + killTimeMillis);
-        threadKiller = new ThreadKillerJob(thread, killTimeMillis);
-        threadKiller.schedule(interruptTimeMillis);
-    }
-
-
-    private IStatus update(IWorkspace workspace, final IProgressMonitor progressMonitor)
+    @Override protected IStatus update(IWorkspace workspace, final IProgressMonitor progressMonitor)
         throws MetaborgException, CoreException, InterruptedException, ThreadDeath {
-        final SubMonitor monitor = SubMonitor.convert(progressMonitor, 95);
+        final SubMonitor monitor = SubMonitor.convert(progressMonitor, 40);
         final Monitor spxMonitor = new Monitor(monitor);
 
         spxMonitor.setDescription("Identifying language");
-        final IProject project = projectService.get(resource);
-        final IdentifiedResource identified = languageIdentifierService.identifyToResource(resource, project);
+        final IProject project;
+        final IdentifiedResource identified;
+        // Languages from plugins may still be registered while this job runs, identify while no language is.
+        languageReadiness.registrationLock().readLock().lock();
+        try {
+            project = projectService.get(resource);
+            identified = languageIdentifierService.identifyToResource(resource, project);
+        } finally {
+            languageReadiness.registrationLock().readLock().unlock();
+        }
         if(identified == null) {
             throw new MetaborgException("Language could not be identified");
         }
@@ -219,20 +145,17 @@ public class EditorUpdateJob<I extends IInputUnit, P extends IParseUnit, A exten
             return StatusUtils.cancel();
         spxMonitor.setDescription("Parsing");
         final I inputUnit = unitService.inputUnit(resource, text, langImpl, identified.dialect);
-        final P parseResult = parse(inputUnit, spxMonitor.subProgress(20));
+        final P parseResult = parse(inputUnit, langImpl, spxMonitor.subProgress(20));
 
         if(parseResult.valid()) {
             if(spxMonitor.cancelled())
                 return StatusUtils.cancel();
+            // Create the outline concurrently with styling.
+            scheduleOutline(langImpl, parseResult);
+
             spxMonitor.setDescription("Styling");
             style(monitor, langImpl, parseResult);
-            spxMonitor.work(5);
-
-            if(spxMonitor.cancelled())
-                return StatusUtils.cancel();
-            spxMonitor.setDescription("Creating outline");
-            outline(monitor, langImpl, parseResult);
-            spxMonitor.work(5);
+            spxMonitor.work(10);
         } else {
             spxMonitor.work(10);
         }
@@ -247,7 +170,7 @@ public class EditorUpdateJob<I extends IInputUnit, P extends IParseUnit, A exten
         if(!instantaneous) {
             try {
                 spxMonitor.setDescription("Waiting");
-                Thread.sleep(300);
+                Thread.sleep(updateScheduler.parseMessagesDelay(resource));
             } catch(InterruptedException e) {
                 return StatusUtils.cancel();
             }
@@ -268,43 +191,21 @@ public class EditorUpdateJob<I extends IInputUnit, P extends IParseUnit, A exten
             return StatusUtils.success();
         }
 
-        // Sleep before analyzing to prevent running many analyses when small edits are made in succession.
-        if(!instantaneous) {
-            try {
-                spxMonitor.setDescription("Waiting");
-                Thread.sleep(analysisDelayMs);
-            } catch(InterruptedException e) {
-                return StatusUtils.cancel();
-            }
-        }
-
-        if(spxMonitor.cancelled())
-            return StatusUtils.cancel();
-        spxMonitor.setDescription("Analyzing");
-        
-        final IContext context = contextService.get(resource, project, langImpl);
-        final IAnalyzeResult<A, AU> analysisResult ;
-        final A result = analysisResultRequester.get(resource);
-        if(changed || result == null) {
-            analysisResult = analyze(parseResult, context, spxMonitor.subProgress(50));
-        } else {
-            analysisResult = new AnalyzeResult<>(result, context);
-        }
-        
-        if(spxMonitor.cancelled())
-            return StatusUtils.cancel();
-        spxMonitor.setDescription("Processing analysis messages");
-        analysisMessages(workspace, spxMonitor.subProgress(5), analysisResult);
+        // Analyze in a separate job, delayed to prevent running many analyses when small edits are made in
+        // succession. The next edit cancels the analysis job if it has not started yet.
+        scheduleAnalysis(project, langImpl, parseResult);
 
         return StatusUtils.success();
     }
 
 
-    private P parse(I input, Monitor monitor) throws ParseException, InterruptedException, ThreadDeath {
+    private P parse(I input, ILanguageImpl langImpl, Monitor monitor) throws ParseException, InterruptedException, ThreadDeath {
         final P parseResult;
         try {
             parseResultProcessor.invalidate(resource);
+            final long parseStart = System.currentTimeMillis();
             parseResult = syntaxService.parse(input, monitor, monitor);
+            updateScheduler.parsed(resource, langImpl, System.currentTimeMillis() - parseStart);
             parseResultProcessor.update(resource, parseResult);
         } catch(ParseException e) {
             parseResultProcessor.error(resource, e);
@@ -320,98 +221,44 @@ public class EditorUpdateJob<I extends IInputUnit, P extends IParseUnit, A exten
         final Iterable<IRegionCategory<F>> categories =
             CategorizerValidator.validate(categorizer.categorize(language, parseResult));
         final Iterable<IRegionStyle<F>> styles = styler.styleParsed(language, categories);
-        editor.setStyle(styles, text, monitor);
+        editor.setStyle(styles, text, modificationStamp, monitor);
     }
 
-    private void outline(final IProgressMonitor monitor, ILanguageImpl language, P parseResult)
-        throws MetaborgException {
+    private void scheduleOutline(ILanguageImpl language, P parseResult) {
         if(!outlineService.available(language)) {
             return;
         }
 
-        final IOutline outline = outlineService.outline(parseResult);
-        if(outline == null) {
-            return;
-        }
+        final Job job = new EditorOutlineJob<>(outlineService, editor, input, eclipseResource, resource,
+            modificationStamp, parseResult);
+        // Outlines may be created with Stratego, which must not happen while Stratego runtimes are changed.
+        job.setRule(globalRules.strategoReadLock(job));
+        job.schedule();
+    }
 
-        editor.setOutline(outline, monitor);
+    private void scheduleAnalysis(IProject project, ILanguageImpl language, P parseResult) throws ContextException {
+        final IContext context = contextService.get(resource, project, language);
+        final Job job = new EditorAnalysisJob<>(resourceService, analyzer, analysisResultProcessor,
+            analysisResultRequester, updateScheduler, editor, input, eclipseResource, resource, modificationStamp,
+            context, language, parseResult, changed);
+        // Only lock the context of the file, such that files in independent contexts are analyzed concurrently.
+        job.setRule(new MultiRule(
+            new ISchedulingRule[] { globalRules.strategoReadLock(job), globalRules.contextLock(context) }));
+        job.schedule(instantaneous ? 0 : updateScheduler.analysisDelay(resource));
     }
 
     private void parseMessages(IWorkspace workspace, Monitor monitor, final P parseResult) throws CoreException {
         // Update markers atomically using a workspace runnable, to prevent flashing/jumping markers.
         final IWorkspaceRunnable parseMarkerUpdater = new IWorkspaceRunnable() {
             @Override public void run(IProgressMonitor workspaceMonitor) throws CoreException {
-                if(workspaceMonitor.isCanceled())
-                    return;
-                MarkerUtils.clearInternal(eclipseResource);
-                MarkerUtils.clearParser(eclipseResource);
-                for(IMessage message : parseResult.messages()) {
-                    MarkerUtils.createMarker(eclipseResource, message);
-                }
-            }
-        };
-        workspace.run(parseMarkerUpdater, eclipseResource, IWorkspace.AVOID_UPDATE, monitor.eclipseMonitor());
-    }
-
-    private IAnalyzeResult<A, AU> analyze(P parseResult, IContext context, Monitor monitor)
-        throws AnalysisException, InterruptedException, ThreadDeath {
-        final IAnalyzeResult<A, AU> analysisResult;
-        try(IClosableLock lock = context.write()) {
-            analysisResultProcessor.invalidate(parseResult.source());
-            try {
-                analysisResult = analyzer.analyze(parseResult, context, monitor, monitor);
-            } catch(AnalysisException e) {
-                analysisResultProcessor.error(resource, e);
-                throw e;
-            } catch(ThreadDeath e) {
-                analysisResultProcessor.error(resource, new AnalysisException(context, "Editor update job killed", e));
-                throw e;
-            }
-            analysisResultProcessor.update(analysisResult.result(), Sets.<FileName>newHashSet());
-        }
-        return analysisResult;
-    }
-
-    private void analysisMessages(IWorkspace workspace, Monitor monitor, final IAnalyzeResult<A, AU> analysisResult)
-        throws CoreException {
-        // Update markers atomically using a workspace runnable, to prevent flashing/jumping markers.
-        final IWorkspaceRunnable analysisMarkerUpdater = new IWorkspaceRunnable() {
-            @Override public void run(IProgressMonitor workspaceMonitor) throws CoreException {
-                if(workspaceMonitor.isCanceled())
+                if(workspaceMonitor.isCanceled() || stale())
                     return;
-                MarkerUtils.clearInternal(eclipseResource);
-                MarkerUtils.clearAnalysis(eclipseResource);
-                for(IMessage message : analysisResult.result().messages()) {
-                    if(workspaceMonitor.isCanceled())
-                        return;
-                    MarkerUtils.createMarker(eclipseResource, message);
-                }
-
-                for(AU result : analysisResult.updates()) {
-                    if(workspaceMonitor.isCanceled())
-                        return;
-                    final IResource messagesEclipseResource = resourceService.unresolve(result.source());
-                    if(messagesEclipseResource == null) {
-                        // In case the analysis sends an update for a resource that is not an eclipse resource; ignore.
-                        logger.debug("Cannot perform analysis update for resource {}, it is not an Eclipse resource",
-                            result.source());
-                        continue;
-                    }
-                    if(!messagesEclipseResource.exists()) {
-                        // In case the analysis sends an update for a resource that does not exist; ignore.
-                        logger.debug("Cannot perform analysis update for resource {}, since it does not exist",
-                            messagesEclipseResource);
-                        continue;
-                    }
-                    MarkerUtils.clearAnalysis(messagesEclipseResource);
-                    for(IMessage message : result.messages()) {
-                        if(workspaceMonitor.isCanceled())
-                            return;
-                        MarkerUtils.createMarker(messagesEclipseResource, message);
-                    }
-                }
+                MarkerUtils.updateMarkers(eclipseResource, parseResult.messages(), MessageType.INTERNAL,
+                    MessageType.PARSER);
             }
         };
-        workspace.run(analysisMarkerUpdater, eclipseResource, IWorkspace.AVOID_UPDATE, monitor.eclipseMonitor());
+        // Use the marker rule instead of the resource, which is not contained in the update lock rule of this job.
+        final ISchedulingRule markerRule = workspace.getRuleFactory().markerRule(eclipseResource);
+        workspace.run(parseMarkerUpdater, markerRule, IWorkspace.AVOID_UPDATE, monitor.eclipseMonitor());
     }
 }
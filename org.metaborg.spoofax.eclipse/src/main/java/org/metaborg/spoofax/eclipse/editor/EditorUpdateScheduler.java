@@ -0,0 +1,256 @@
+package org.metaborg.spoofax.eclipse.editor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.core.language.LanguageIdentifier;
+import org.metaborg.spoofax.eclipse.SpoofaxPreferences;
+import org.metaborg.spoofax.eclipse.util.Nullable;
+
+import com.google.inject.Inject;
+
+/**
+ * Editor update scheduler that chooses delays from exponential moving averages of parse cost, analysis cost, and
+ * typing interval. Uses the fixed delays of earlier versions until measurements are available. Costs of languages are
+ * keyed by language identifier, such that reloading a language keeps its costs and does not retain the old
+ * implementation.
+ */
+public class EditorUpdateScheduler implements IEditorUpdateScheduler {
+    /**
+     * Weight of a new measurement in the moving averages.
+     */
+    private static final double alpha = 0.3;
+    /**
+     * Time between edits after which the user is considered to have paused typing.
+     */
+    private static final long pauseMs = 2000;
+
+    private static final long defaultParseDelayMs = 300;
+    private static final long minParseDelayMs = 50;
+    private static final long maxParseDelayMs = 1000;
+
+    private static final long defaultParseMessagesDelayMs = 300;
+    private static final long minParseMessagesDelayMs = 100;
+    private static final long maxParseMessagesDelayMs = 1000;
+
+    private static final long defaultAnalysisDelayMs = 500;
+    private static final long minAnalysisDelayMs = 200;
+    private static final long maxAnalysisDelayMs = 5000;
+    private static final long delayedAnalysisDelayMs = 5000;
+
+    private final SpoofaxPreferences preferences;
+
+    private final ConcurrentMap<FileName, Costs> fileCosts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<LanguageIdentifier, Costs> languageCosts = new ConcurrentHashMap<>();
+
+
+    @Inject public EditorUpdateScheduler(SpoofaxPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+
+    @Override public void edited(FileObject resource) {
+        final Costs costs = costs(resource);
+        final long interval = costs.edited(System.currentTimeMillis());
+        // Record the interval between edits of the same file, not between edits of different files of the language.
+        final LanguageIdentifier language = costs.language;
+        if(interval >= 0 && language != null) {
+            costs(language).typed(interval);
+        }
+    }
+
+    @Override public void parsed(FileObject resource, ILanguageImpl language, long durationMs) {
+        final Costs costs = costs(resource);
+        costs.language = language.id();
+        costs.parsed(durationMs);
+        costs(language.id()).parsed(durationMs);
+    }
+
+    @Override public void analyzed(FileObject resource, ILanguageImpl language, long durationMs) {
+        final Costs costs = costs(resource);
+        costs.language = language.id();
+        costs.analyzed(durationMs);
+        costs(language.id()).analyzed(durationMs);
+    }
+
+    @Override public void remove(FileObject resource) {
+        fileCosts.remove(resource.getName());
+    }
+
+
+    @Override public long parseDelay(FileObject resource) {
+        final Costs costs = fileCosts.get(resource.getName());
+        return parseDelay(parseCost(costs), typingInterval(costs));
+    }
+
+    @Override public long parseMessagesDelay(FileObject resource) {
+        final Costs costs = fileCosts.get(resource.getName());
+        return parseMessagesDelay(typingInterval(costs));
+    }
+
+    @Override public long analysisDelay(FileObject resource) {
+        final Costs costs = fileCosts.get(resource.getName());
+        return analysisDelay(analysisCost(costs), typingInterval(costs));
+    }
+
+
+    @Override public @Nullable EditorUpdateStatistics statistics(FileObject resource) {
+        final Costs costs = fileCosts.get(resource.getName());
+        if(costs == null) {
+            return null;
+        }
+        return statistics(parseCost(costs), analysisCost(costs), typingInterval(costs));
+    }
+
+    @Override public @Nullable EditorUpdateStatistics statistics(ILanguageImpl language) {
+        final Costs costs = languageCosts.get(language.id());
+        if(costs == null) {
+            return null;
+        }
+        return statistics(costs.parseCost, costs.analysisCost, costs.typingInterval);
+    }
+
+
+    private EditorUpdateStatistics statistics(double parseCost, double analysisCost, double typingInterval) {
+        return new EditorUpdateStatistics(parseCost, analysisCost, typingInterval,
+            parseDelay(parseCost, typingInterval), parseMessagesDelay(typingInterval),
+            analysisDelay(analysisCost, typingInterval));
+    }
+
+    private long parseDelay(double parseCost, double typingInterval) {
+        if(Double.isNaN(parseCost) || Double.isNaN(typingInterval)) {
+            return defaultParseDelayMs;
+        }
+        // Parse almost immediately if parsing finishes well before the next edit is expected.
+        if(parseCost <= typingInterval / 2) {
+            return minParseDelayMs;
+        }
+        // Otherwise, wait until the user pauses typing, to prevent parses that are cancelled by the next edit.
+        return clamp((long) (typingInterval * 1.5), minParseDelayMs, maxParseDelayMs);
+    }
+
+    private long parseMessagesDelay(double typingInterval) {
+        if(Double.isNaN(typingInterval)) {
+            return defaultParseMessagesDelayMs;
+        }
+        return clamp((long) (typingInterval * 2), minParseMessagesDelayMs, maxParseMessagesDelayMs);
+    }
+
+    private long analysisDelay(double analysisCost, double typingInterval) {
+        long delay = defaultAnalysisDelayMs;
+        if(!Double.isNaN(analysisCost)) {
+            // Expensive analyses are delayed longer, to prevent running many of them when editing in succession.
+            delay = clamp((long) (analysisCost * 2), minAnalysisDelayMs, maxAnalysisDelayMs);
+        }
+        if(!Double.isNaN(typingInterval)) {
+            delay = clamp(Math.max(delay, (long) (typingInterval * 3)), minAnalysisDelayMs, maxAnalysisDelayMs);
+        }
+        if(preferences.delayEditorAnalysis()) {
+            delay = Math.max(delay, delayedAnalysisDelayMs);
+        }
+        return delay;
+    }
+
+
+    private double parseCost(@Nullable Costs costs) {
+        if(costs == null) {
+            return Double.NaN;
+        }
+        return fallback(costs.parseCost, costs.language, true);
+    }
+
+    private double analysisCost(@Nullable Costs costs) {
+        if(costs == null) {
+            return Double.NaN;
+        }
+        return fallback(costs.analysisCost, costs.language, false);
+    }
+
+    private double typingInterval(@Nullable Costs costs) {
+        if(costs == null) {
+            return Double.NaN;
+        }
+        return costs.typingInterval;
+    }
+
+    private double fallback(double fileCost, @Nullable LanguageIdentifier language, boolean parse) {
+        if(!Double.isNaN(fileCost) || language == null) {
+            return fileCost;
+        }
+        final Costs costs = languageCosts.get(language);
+        if(costs == null) {
+            return Double.NaN;
+        }
+        return parse ? costs.parseCost : costs.analysisCost;
+    }
+
+    private Costs costs(FileObject resource) {
+        final FileName name = resource.getName();
+        final Costs costs = fileCosts.get(name);
+        if(costs != null) {
+            return costs;
+        }
+        final Costs newCosts = new Costs();
+        final Costs existingCosts = fileCosts.putIfAbsent(name, newCosts);
+        return existingCosts != null ? existingCosts : newCosts;
+    }
+
+    private Costs costs(LanguageIdentifier language) {
+        final Costs costs = languageCosts.get(language);
+        if(costs != null) {
+            return costs;
+        }
+        final Costs newCosts = new Costs();
+        final Costs existingCosts = languageCosts.putIfAbsent(language, newCosts);
+        return existingCosts != null ? existingCosts : newCosts;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+
+    private static final class Costs {
+        private volatile @Nullable LanguageIdentifier language;
+        private volatile double parseCost = Double.NaN;
+        private volatile double analysisCost = Double.NaN;
+        private volatile double typingInterval = Double.NaN;
+        private long lastEdit;
+
+
+        /**
+         * @return Time since the previous edit, or -1 if the user paused typing in between.
+         */
+        public synchronized long edited(long time) {
+            final long interval = time - lastEdit;
+            lastEdit = time;
+            if(interval > pauseMs) {
+                return -1;
+            }
+            typed(interval);
+            return interval;
+        }
+
+        public synchronized void typed(long interval) {
+            typingInterval = average(typingInterval, interval);
+        }
+
+        public synchronized void parsed(long durationMs) {
+            parseCost = average(parseCost, durationMs);
+        }
+
+        public synchronized void analyzed(long durationMs) {
+            analysisCost = average(analysisCost, durationMs);
+        }
+
+        private static double average(double average, double value) {
+            if(Double.isNaN(average)) {
+                return value;
+            }
+            return alpha * value + (1 - alpha) * average;
+        }
+    }
+}
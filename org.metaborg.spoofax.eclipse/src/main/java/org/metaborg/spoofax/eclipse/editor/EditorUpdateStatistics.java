@@ -0,0 +1,43 @@
+package org.metaborg.spoofax.eclipse.editor;
+
+/**
+ * Measured costs and chosen delays of editor updates, as reported by {@link IEditorUpdateScheduler}. Costs that have not
+ * been measured yet are {@link Double#NaN}.
+ */
+public class EditorUpdateStatistics {
+    /**
+     * Moving average of parse durations, in milliseconds.
+     */
+    public final double parseCostMs;
+    /**
+     * Moving average of analysis durations, in milliseconds.
+     */
+    public final double analysisCostMs;
+    /**
+     * Moving average of time between edits while typing, in milliseconds.
+     */
+    public final double typingIntervalMs;
+
+    public final long parseDelayMs;
+    public final long parseMessagesDelayMs;
+    public final long analysisDelayMs;
+
+
+    public EditorUpdateStatistics(double parseCostMs, double analysisCostMs, double typingIntervalMs,
+        long parseDelayMs, long parseMessagesDelayMs, long analysisDelayMs) {
+        this.parseCostMs = parseCostMs;
+        this.analysisCostMs = analysisCostMs;
+        this.typingIntervalMs = typingIntervalMs;
+        this.parseDelayMs = parseDelayMs;
+        this.parseMessagesDelayMs = parseMessagesDelayMs;
+        this.analysisDelayMs = analysisDelayMs;
+    }
+
+
+    @Override public String toString() {
+        return String.format(
+            "parse cost %.1fms, analysis cost %.1fms, typing interval %.1fms; "
+                + "parse delay %dms, parse messages delay %dms, analysis delay %dms",
+            parseCostMs, analysisCostMs, typingIntervalMs, parseDelayMs, parseMessagesDelayMs, analysisDelayMs);
+    }
+}
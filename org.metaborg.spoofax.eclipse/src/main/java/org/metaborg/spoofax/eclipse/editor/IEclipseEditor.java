@@ -3,6 +3,7 @@ package org.metaborg.spoofax.eclipse.editor;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.ITextOperationTarget;
 import org.eclipse.jface.text.source.ISourceViewer;
 import org.eclipse.jface.text.source.SourceViewerConfiguration;
@@ -60,14 +61,25 @@ public interface IEclipseEditor<F> extends IEditor, ITextEditor {
 
 
     /**
-     * Sets the text styling, using given text and monitor for cancellation. Can be called from any thread.
+     * @return Modification stamp of the current document, or {@link IDocumentExtension4#UNKNOWN_MODIFICATION_STAMP} if
+     *         the editor has not been initialized yet, if it has been disposed, or if the document does not support
+     *         modification stamps.
      */
-    void setStyle(Iterable<IRegionStyle<F>> style, String text, IProgressMonitor monitor);
+    long modificationStamp();
+
+
+    /**
+     * Sets the text styling, using given monitor for cancellation. The styling is ignored if the document was modified
+     * after the given modification stamp was taken. Given text is only compared against the document if the
+     * modification stamp is unknown. Can be called from any thread.
+     */
+    void setStyle(Iterable<IRegionStyle<F>> style, String text, long modificationStamp, IProgressMonitor monitor);
 
     /**
-     * Sets the outline information, using given monitor for cancellation. Can be called from any thread.
+     * Sets the outline information, using given monitor for cancellation. The outline is ignored if the document was
+     * modified after the given modification stamp was taken. Can be called from any thread.
      */
-    void setOutline(IOutline outline, IProgressMonitor monitor);
+    void setOutline(IOutline outline, long modificationStamp, IProgressMonitor monitor);
 
 
     /**
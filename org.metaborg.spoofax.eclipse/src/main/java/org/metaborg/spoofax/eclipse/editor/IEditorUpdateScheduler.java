@@ -0,0 +1,60 @@
+package org.metaborg.spoofax.eclipse.editor;
+
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.spoofax.eclipse.util.Nullable;
+
+/**
+ * Chooses the delays used by editors to debounce updates, based on measured parse and analysis costs and the typing
+ * rate of the user. Costs are tracked per file, falling back to the costs of the language of the file for files
+ * without measurements.
+ */
+public interface IEditorUpdateScheduler {
+    /**
+     * Records that given resource was edited in an editor.
+     */
+    void edited(FileObject resource);
+
+    /**
+     * Records that parsing given resource of given language took given amount of time.
+     */
+    void parsed(FileObject resource, ILanguageImpl language, long durationMs);
+
+    /**
+     * Records that analyzing given resource of given language took given amount of time.
+     */
+    void analyzed(FileObject resource, ILanguageImpl language, long durationMs);
+
+    /**
+     * Forgets measurements of given resource, for example when its editor is closed. Measurements of its language are
+     * retained.
+     */
+    void remove(FileObject resource);
+
+
+    /**
+     * @return Delay in milliseconds between an edit of given resource and parsing it.
+     */
+    long parseDelay(FileObject resource);
+
+    /**
+     * @return Delay in milliseconds between parsing given resource and showing its parse messages.
+     */
+    long parseMessagesDelay(FileObject resource);
+
+    /**
+     * @return Delay in milliseconds between parsing given resource and analyzing it.
+     */
+    long analysisDelay(FileObject resource);
+
+
+    /**
+     * @return Measured costs and chosen delays for given resource, or null if nothing was measured for it yet.
+     */
+    @Nullable EditorUpdateStatistics statistics(FileObject resource);
+
+    /**
+     * @return Measured costs for given language, or null if nothing was measured for it yet.
+     */
+    @Nullable EditorUpdateStatistics statistics(ILanguageImpl language);
+}
@@ -0,0 +1,169 @@
+package org.metaborg.spoofax.eclipse.editor;
+
+import java.util.List;
+
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextPresentation;
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.widgets.Display;
+import org.metaborg.spoofax.eclipse.util.Nullable;
+import org.metaborg.spoofax.eclipse.util.StyleUtils;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Keeps track of the style ranges that were last applied to the source viewer, and the damage done to the document
+ * since. Used to compute a text presentation that only covers the region where new style ranges differ from the
+ * applied ones, instead of replacing the text presentation of the entire document.
+ *
+ * THREADING: {@link #damaged}, {@link #applied}, {@link #appliedRegion}, {@link #invalidate}, and {@link #isCurrent}
+ * must be called from the main thread. {@link #snapshot} and {@link Snapshot#damagePresentation} may be called from
+ * any thread.
+ */
+public class IncrementalPresentation {
+    private volatile @Nullable List<StyleRange> applied;
+    private volatile @Nullable DocumentDamage damage;
+
+
+    /**
+     * Merges given document event into the damage since the last applied style ranges.
+     */
+    public void damaged(DocumentEvent event) {
+        damage = DocumentDamage.merge(damage, event);
+    }
+
+    /**
+     * Records given style ranges as applied to the entire source viewer, resetting the damage. The style ranges are
+     * copied, since the text presentation they are applied with may modify them.
+     */
+    public void applied(List<StyleRange> styleRanges) {
+        final List<StyleRange> copies = Lists.newArrayListWithCapacity(styleRanges.size());
+        for(StyleRange styleRange : styleRanges) {
+            copies.add((StyleRange) styleRange.clone());
+        }
+        applied = copies;
+        damage = null;
+    }
+
+    /**
+     * Records that given region of the source viewer was restyled with style ranges other than the applied ones. The
+     * region is treated as damaged, such that the next presentation covers it.
+     */
+    public void appliedRegion(IRegion region) {
+        damage = DocumentDamage.merge(damage, region.getOffset(), region.getLength(), region.getLength());
+    }
+
+    /**
+     * Forgets the applied style ranges, for example when the text presentation is changed outside of this class. The
+     * next presentation will cover the entire document.
+     */
+    public void invalidate() {
+        applied = null;
+        damage = null;
+    }
+
+    /**
+     * @return Snapshot of the applied style ranges and current damage.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(applied, damage);
+    }
+
+    /**
+     * @return True if no styling was applied and the document was not changed since given snapshot was taken.
+     */
+    public boolean isCurrent(Snapshot snapshot) {
+        return applied == snapshot.applied && damage == snapshot.damage;
+    }
+
+
+    /**
+     * Immutable snapshot of an {@link IncrementalPresentation}.
+     */
+    public static final class Snapshot {
+        private final @Nullable List<StyleRange> applied;
+        private final @Nullable DocumentDamage damage;
+
+
+        private Snapshot(@Nullable List<StyleRange> applied, @Nullable DocumentDamage damage) {
+            this.applied = applied;
+            this.damage = damage;
+        }
+
+
+        /**
+         * Computes the text presentation that transforms the applied style ranges into given style ranges. Applied
+         * style ranges before the damage are compared as is, applied style ranges after the damage are compared after
+         * shifting them by the length difference of the damage, since the text widget shifts them when the text
+         * changes. Only the region between the longest matching prefix and suffix is included.
+         *
+         * @param styleRanges
+         *            New style ranges, ordered by start offset.
+         * @param length
+         *            Length of the text the new style ranges are created for.
+         * @param display
+         *            Display to create the text presentation on.
+         * @return Text presentation covering the changed region, an empty text presentation if nothing changed, or
+         *         null if there are no applied style ranges to compare against.
+         */
+        public @Nullable TextPresentation damagePresentation(List<StyleRange> styleRanges, int length,
+            Display display) {
+            if(applied == null) {
+                return null;
+            }
+
+            final List<StyleRange> oldRanges = applied;
+            final int oldSize = oldRanges.size();
+            final int newSize = styleRanges.size();
+            // Without damage, the text is the same, so all applied style ranges can be compared as is.
+            final int damageStart = damage == null ? Integer.MAX_VALUE : damage.offset();
+            final int damageOldEnd = damage == null ? Integer.MIN_VALUE : damage.offset() + damage.oldLength();
+            final int delta = damage == null ? 0 : damage.delta();
+
+            int prefix = 0;
+            while(prefix < oldSize && prefix < newSize) {
+                final StyleRange oldRange = oldRanges.get(prefix);
+                final StyleRange newRange = styleRanges.get(prefix);
+                if(oldRange.start + oldRange.length > damageStart || !equal(oldRange, 0, newRange)) {
+                    break;
+                }
+                ++prefix;
+            }
+
+            int suffix = 0;
+            while(prefix + suffix < oldSize && prefix + suffix < newSize) {
+                final StyleRange oldRange = oldRanges.get(oldSize - 1 - suffix);
+                final StyleRange newRange = styleRanges.get(newSize - 1 - suffix);
+                if(oldRange.start < damageOldEnd || !equal(oldRange, delta, newRange)) {
+                    break;
+                }
+                ++suffix;
+            }
+
+            int start = prefix == 0 ? 0 : end(styleRanges.get(prefix - 1));
+            int end = suffix == 0 ? length : styleRanges.get(newSize - suffix).start;
+            if(damage != null) {
+                // Always cover the damage, since inserted text may not have the default style.
+                start = Math.min(start, damage.offset());
+                end = Math.max(end, damage.offset() + damage.newLength());
+            }
+            if(start >= end) {
+                return new TextPresentation();
+            }
+            return StyleUtils.createTextPresentation(styleRanges, prefix, newSize - suffix,
+                new Region(start, end - start), display);
+        }
+
+
+        private static boolean equal(StyleRange oldRange, int delta, StyleRange newRange) {
+            return oldRange.start + delta == newRange.start && oldRange.length == newRange.length
+                && oldRange.similarTo(newRange);
+        }
+
+        private static int end(StyleRange range) {
+            return range.start + range.length;
+        }
+    }
+}
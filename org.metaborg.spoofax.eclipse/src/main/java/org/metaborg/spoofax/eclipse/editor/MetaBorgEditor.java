@@ -2,20 +2,28 @@ package org.metaborg.spoofax.eclipse.editor;
 
 import java.awt.Color;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.vfs2.FileObject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.jobs.IJobManager;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.jobs.MultiRule;
+import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ITextOperationTarget;
 import org.eclipse.jface.text.ITextViewerExtension4;
+import org.eclipse.jface.text.IViewportListener;
+import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.TextPresentation;
 import org.eclipse.jface.text.source.DefaultCharacterPairMatcher;
 import org.eclipse.jface.text.source.ICharacterPairMatcher;
@@ -24,6 +32,7 @@ import org.eclipse.jface.text.source.ISourceViewerExtension2;
 import org.eclipse.jface.text.source.IVerticalRuler;
 import org.eclipse.jface.text.source.SourceViewerConfiguration;
 import org.eclipse.jface.viewers.ISelectionProvider;
+import org.eclipse.swt.custom.StyleRange;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IEditorInput;
@@ -44,6 +53,7 @@ import org.metaborg.core.processing.analyze.IAnalysisResultProcessor;
 import org.metaborg.core.processing.analyze.IAnalysisResultRequester;
 import org.metaborg.core.processing.parse.IParseResultProcessor;
 import org.metaborg.core.project.IProjectService;
+import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.core.style.ICategorizerService;
 import org.metaborg.core.style.IRegionStyle;
 import org.metaborg.core.style.IStylerService;
@@ -56,11 +66,15 @@ import org.metaborg.core.tracing.IResolverService;
 import org.metaborg.core.unit.IInputUnitService;
 import org.metaborg.spoofax.eclipse.SpoofaxPlugin;
 import org.metaborg.spoofax.eclipse.SpoofaxPreferences;
+import org.metaborg.spoofax.eclipse.build.MarkerOverflow;
 import org.metaborg.spoofax.eclipse.editor.outline.SpoofaxOutlinePage;
 import org.metaborg.spoofax.eclipse.editor.outline.SpoofaxOutlinePopup;
 import org.metaborg.spoofax.eclipse.job.GlobalSchedulingRules;
+import org.metaborg.spoofax.eclipse.job.LockRule;
+import org.metaborg.spoofax.eclipse.language.LanguageReadiness;
 import org.metaborg.spoofax.eclipse.resource.IEclipseResourceService;
 import org.metaborg.spoofax.eclipse.util.Nullable;
+import org.metaborg.spoofax.eclipse.util.StatusUtils;
 import org.metaborg.spoofax.eclipse.util.StyleUtils;
 import org.metaborg.util.log.ILogger;
 import org.metaborg.util.log.LoggerUtils;
@@ -71,6 +85,10 @@ import com.google.inject.Injector;
 public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit, A extends IAnalyzeUnit, AU extends IAnalyzeUnitUpdate, F>
     extends TextEditor implements IEclipseEditor<F> {
     private static final ILogger logger = LoggerUtils.logger(MetaBorgEditor.class);
+    /**
+     * Documents larger than this factor times the visible region are styled in two phases: visible region first.
+     */
+    private static final int viewportStyleFactor = 4;
 
     protected IEclipseResourceService resourceService;
     protected ILanguageIdentifierService languageIdentifier;
@@ -90,11 +108,17 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
 
     protected GlobalSchedulingRules globalRules;
     protected SpoofaxPreferences preferences;
+    protected IEditorUpdateScheduler updateScheduler;
+    protected MarkerOverflow markerOverflow;
+    protected LanguageReadiness languageReadiness;
 
     protected IJobManager jobManager;
 
     protected final IPropertyListener editorInputChangedListener;
+    protected final IViewportListener viewportListener;
     protected final PresentationMerger presentationMerger;
+    protected final IncrementalPresentation incrementalPresentation;
+    protected final LockRule updateRule;
     protected final SpoofaxOutlinePage outlinePage;
     protected SpoofaxOutlinePopup outlinePopup;
 
@@ -102,6 +126,9 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
     protected ISourceViewer sourceViewer;
     protected ISourceViewerExtension2 sourceViewerExt2;
     protected ITextViewerExtension4 textViewerExt4;
+    protected volatile @Nullable IRegion viewport;
+    protected volatile boolean waitingForLanguage;
+    protected volatile boolean changedWhileWaiting;
 
     protected IEditorInput input;
     protected String inputName;
@@ -119,7 +146,10 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
         super();
 
         this.editorInputChangedListener = new EditorInputChangedListener();
+        this.viewportListener = new ViewportListener();
         this.presentationMerger = new PresentationMerger();
+        this.incrementalPresentation = new IncrementalPresentation();
+        this.updateRule = new LockRule("Editor update lock");
         this.outlinePage = new SpoofaxOutlinePage(this);
     }
 
@@ -166,6 +196,7 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
         presentationMerger.invalidate();
         display.asyncExec(new Runnable() {
             @Override public void run() {
+                incrementalPresentation.invalidate();
                 sourceViewer.changeTextPresentation(blackPresentation, true);
             }
         });
@@ -257,27 +288,103 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
     }
 
 
-    @Override public void setStyle(Iterable<IRegionStyle<F>> style, final String text, final IProgressMonitor monitor) {
+    @Override public long modificationStamp() {
+        final IDocument currentDocument = document;
+        if(currentDocument instanceof IDocumentExtension4) {
+            return ((IDocumentExtension4) currentDocument).getModificationStamp();
+        }
+        return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    }
+
+
+    @Override public void setStyle(Iterable<IRegionStyle<F>> style, final String text, final long modificationStamp,
+        final IProgressMonitor monitor) {
+        final IRegion visibleRegion = viewport;
+        if(visibleRegion == null || text.length() <= visibleRegion.getLength() * viewportStyleFactor) {
+            applyStyle(style, text, modificationStamp, monitor);
+            return;
+        }
+
+        final Display display = Display.getDefault();
+
+        // Style the visible region first, and the rest of the document in a follow-up job with a lower priority.
+        final List<IRegionStyle<F>> styles = Lists.newArrayList(style);
+        final List<StyleRange> viewportRanges = Lists.newArrayList();
+        final int visibleStart = visibleRegion.getOffset();
+        final int visibleEnd = visibleStart + visibleRegion.getLength();
+        int start = visibleStart;
+        int end = visibleEnd;
+        for(IRegionStyle<F> regionStyle : styles) {
+            final ISourceRegion region = regionStyle.region();
+            if(region.endOffset() < visibleStart || region.startOffset() >= visibleEnd) {
+                continue;
+            }
+            viewportRanges.add(StyleUtils.createStyleRange(regionStyle, display));
+            start = Math.min(start, region.startOffset());
+            end = Math.max(end, region.endOffset() + 1);
+        }
+        end = Math.min(end, text.length());
+        final IRegion presentationRegion = new Region(start, Math.max(0, end - start));
+        final TextPresentation viewportPresentation = StyleUtils.createTextPresentation(viewportRanges, 0,
+            viewportRanges.size(), presentationRegion, display);
+        // Merge the visible region into presentations from other sources until the remainder has been styled, keeping
+        // the previous styling of the rest of the document in case the remainder is never applied.
+        presentationMerger.overlay(viewportPresentation);
+
+        // Update styling on the main thread, required by Eclipse.
+        display.asyncExec(new Runnable() {
+            public void run() {
+                if(monitor.isCanceled())
+                    return;
+                // Also cancel if text presentation is not valid for current text any more.
+                if(isStale(text, modificationStamp)) {
+                    return;
+                }
+                sourceViewer.changeTextPresentation(viewportPresentation, true);
+                incrementalPresentation.appliedRegion(presentationRegion);
+                // THREADING: schedule the follow-up job after the visible region has been restyled, such that it
+                // takes the restyled region into account.
+                new StyleRemainderJob(styles, text, modificationStamp).schedule();
+            }
+        });
+    }
+
+    private void applyStyle(Iterable<IRegionStyle<F>> style, final String text, final long modificationStamp,
+        final IProgressMonitor monitor) {
         final Display display = Display.getDefault();
 
-        final TextPresentation textPresentation = StyleUtils.createTextPresentation(style, display);
+        final List<StyleRange> styleRanges = StyleUtils.createStyleRanges(style, display);
+        final TextPresentation textPresentation = StyleUtils.createTextPresentation(styleRanges, display);
         presentationMerger.set(textPresentation);
 
+        // Only send the region that differs from the currently applied styling to the source viewer, if possible.
+        final IncrementalPresentation.Snapshot snapshot = incrementalPresentation.snapshot();
+        final TextPresentation damagePresentation =
+            snapshot.damagePresentation(styleRanges, text.length(), display);
+
         // Update styling on the main thread, required by Eclipse.
         display.asyncExec(new Runnable() {
             public void run() {
                 if(monitor.isCanceled())
                     return;
                 // Also cancel if text presentation is not valid for current text any more.
-                if(document == null || !document.get().equals(text)) {
+                if(isStale(text, modificationStamp)) {
                     return;
                 }
-                sourceViewer.changeTextPresentation(textPresentation, true);
+                if(damagePresentation != null && incrementalPresentation.isCurrent(snapshot)) {
+                    if(!damagePresentation.isEmpty()) {
+                        sourceViewer.changeTextPresentation(damagePresentation, true);
+                    }
+                } else {
+                    sourceViewer.changeTextPresentation(textPresentation, true);
+                }
+                incrementalPresentation.applied(styleRanges);
             }
         });
     }
 
-    @Override public void setOutline(final IOutline outline, final IProgressMonitor monitor) {
+    @Override public void setOutline(final IOutline outline, final long modificationStamp,
+        final IProgressMonitor monitor) {
         final Display display = Display.getDefault();
 
         // Update outline on the main thread, required by Eclipse.
@@ -285,6 +392,11 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
             public void run() {
                 if(monitor.isCanceled())
                     return;
+                // Also cancel if outline is not valid for current text any more.
+                if(document == null || modificationStamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP
+                    && modificationStamp != modificationStamp()) {
+                    return;
+                }
                 outlinePage.update(outline);
                 outlinePopup.update(outline);
             }
@@ -320,7 +432,9 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
         this.projectService = injector.getInstance(IProjectService.class);
         this.globalRules = injector.getInstance(GlobalSchedulingRules.class);
         this.preferences = injector.getInstance(SpoofaxPreferences.class);
-
+        this.updateScheduler = injector.getInstance(IEditorUpdateScheduler.class);
+        this.markerOverflow = injector.getInstance(MarkerOverflow.class);
+        this.languageReadiness = injector.getInstance(LanguageReadiness.class);
     }
 
     protected abstract void injectGenericServices(Injector injectors);
@@ -368,9 +482,17 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
         // sources, such as marker annotations.
         textViewerExt4.addTextPresentationListener(presentationMerger);
 
+        // Register for scrolling, to keep the visible region that is styled first up to date.
+        sourceViewer.addViewportListener(viewportListener);
+
         // Create quick outline control.
         this.outlinePopup = new SpoofaxOutlinePopup(getSite().getShell(), this);
 
+        // Create markers for messages that a build did not create markers for, to limit the number of markers.
+        if(resource != null) {
+            markerOverflow.materialize(resource);
+        }
+
         scheduleJob(true, false);
 
         return sourceViewer;
@@ -406,6 +528,9 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
 
     @Override public void dispose() {
         cancelJobs(input);
+        if(resource != null) {
+            updateScheduler.remove(resource);
+        }
 
         if(documentListener != null) {
             document.removeDocumentListener(documentListener);
@@ -414,6 +539,9 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
         if(textViewerExt4 != null) {
             textViewerExt4.removeTextPresentationListener(presentationMerger);
         }
+        if(sourceViewer != null) {
+            sourceViewer.removeViewportListener(viewportListener);
+        }
 
         input = null;
         inputName = null;
@@ -453,7 +581,9 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
             return;
         }
 
-        cancelJobs(input);
+        // Let a running analysis of a previous edit finish, cancelling it would throw its work away.
+        cancelJobs(input, true);
+        viewport = visibleRegion();
 
         // THREADING: invalidate text styling here on the main thread (instead of in the editor update job), to prevent
         // race conditions.
@@ -463,29 +593,90 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
             analysisResultProcessor.invalidate(resource);
         }
 
-        final long analysisDelayMs = preferences.delayEditorAnalysis() ? 5000 : 500;
+        // Wait for the language of this editor to be loaded during startup, instead of for all languages. Update once
+        // when it is ready, with the text at that time.
+        final CompletableFuture<Void> ready = languageReadiness.ready(resource);
+        if(!ready.isDone()) {
+            changedWhileWaiting |= changed;
+            if(!waitingForLanguage) {
+                waitingForLanguage = true;
+                ready.thenRun(() -> Display.getDefault().asyncExec(() -> {
+                    final boolean changedText = changedWhileWaiting;
+                    waitingForLanguage = false;
+                    changedWhileWaiting = false;
+                    if(input != null) {
+                        scheduleJob(true, changedText);
+                    }
+                }));
+            }
+            return;
+        }
+
         final boolean analysis = !preferences.disableEditorAnalysis();
         final Job job = new EditorUpdateJob<>(resourceService, languageIdentifier, contextService, projectService,
             unitService, syntaxService, analysisService, categorizerService, stylerService, outlineService,
-            parseResultProcessor, analysisResultProcessor, analysisResultRequester, this, input, eclipseResource, resource, document.get(),
-            changed, instantaneous, analysisDelayMs, analysis);
-        final ISchedulingRule rule;
-        if(eclipseResource == null) {
-            rule = new MultiRule(new ISchedulingRule[] { globalRules.startupReadLock() });
-        } else if(!analysis) {
-            rule = new MultiRule(new ISchedulingRule[] { globalRules.startupReadLock(), eclipseResource });
+            parseResultProcessor, analysisResultProcessor, analysisResultRequester, globalRules,
+            languageReadiness, updateScheduler, this, input, eclipseResource, resource, document.get(),
+            modificationStamp(), changed, instantaneous, analysis);
+        // Parsing and styling only require exclusive access to this editor. Analysis is scheduled by the update job as
+        // a separate job, which requires the Stratego lock and the project. Resources of languages that no plugin
+        // claims may be of a language from a workspace project, which is loaded under the startup write lock.
+        if(languageReadiness.claimed(resource)) {
+            job.setRule(updateRule);
         } else {
-            rule = new MultiRule(new ISchedulingRule[] { globalRules.startupReadLock(), globalRules.strategoLock(),
-                eclipseResource.getProject() });
+            job.setRule(new MultiRule(new ISchedulingRule[] { globalRules.startupReadLock(), updateRule }));
+        }
+        job.schedule(instantaneous ? 0 : updateScheduler.parseDelay(resource));
+    }
+
+    /**
+     * @return Region of the document that is visible in the source viewer, extended by one page above and below, or
+     *         null if it cannot be determined. Must be called from the main thread.
+     */
+    private @Nullable IRegion visibleRegion() {
+        final int topLine = sourceViewer.getTopIndex();
+        final int bottomLine = sourceViewer.getBottomIndex();
+        if(topLine < 0 || bottomLine < topLine) {
+            return null;
         }
-        job.setRule(rule);
-        job.schedule(instantaneous ? 0 : 300);
+        final int margin = bottomLine - topLine + 1;
+        try {
+            final int startLine = Math.max(0, topLine - margin);
+            final int endLine = Math.min(document.getNumberOfLines() - 1, bottomLine + margin);
+            final int start = document.getLineOffset(startLine);
+            final int end = document.getLineOffset(endLine) + document.getLineLength(endLine);
+            return new Region(start, end - start);
+        } catch(BadLocationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if the current document is different from the document with given text and modification stamp. Compares
+     * modification stamps if they are known, and falls back to comparing the text otherwise. Must be called from the
+     * main thread.
+     */
+    private boolean isStale(String text, long modificationStamp) {
+        if(document == null) {
+            return true;
+        }
+        if(modificationStamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP) {
+            return modificationStamp != modificationStamp();
+        }
+        return !document.get().equals(text);
     }
 
     private void cancelJobs(IEditorInput specificInput) {
+        cancelJobs(specificInput, false);
+    }
+
+    private void cancelJobs(IEditorInput specificInput, boolean keepRunningAnalysis) {
         logger.trace("Cancelling editor update jobs for {}", specificInput);
         final Job[] existingJobs = jobManager.find(specificInput);
         for(Job job : existingJobs) {
+            if(keepRunningAnalysis && job instanceof EditorAnalysisJob && job.getState() == Job.RUNNING) {
+                continue;
+            }
             job.cancel();
         }
     }
@@ -503,6 +694,7 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
         }
         input = getEditorInput();
         document = getDocumentProvider().getDocument(input);
+        incrementalPresentation.invalidate();
         documentListener = new DocumentListener();
         document.addDocumentListener(documentListener);
 
@@ -516,6 +708,10 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
             logger.warn("Resource for editor on {} is null, cannot update the editor", inputName);
         }
 
+        if(resource != null) {
+            markerOverflow.materialize(resource);
+        }
+
         // Reconfigure the editor because the language may have changed.
         reconfigure();
 
@@ -523,12 +719,50 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
         scheduleJob(true, true);
     }
 
+    /**
+     * Styles the entire document after the visible region has been styled.
+     */
+    private final class StyleRemainderJob extends Job {
+        private final Iterable<IRegionStyle<F>> styles;
+        private final String text;
+        private final long modificationStamp;
+        private final IEditorInput jobInput;
+
+
+        public StyleRemainderJob(Iterable<IRegionStyle<F>> styles, String text, long modificationStamp) {
+            super("Styling Spoofax editor for " + inputName);
+            setPriority(Job.DECORATE);
+            setSystem(true);
+
+            this.styles = styles;
+            this.text = text;
+            this.modificationStamp = modificationStamp;
+            this.jobInput = input;
+        }
+
+
+        @Override public boolean belongsTo(Object family) {
+            return jobInput.equals(family) || MetaBorgEditor.this.equals(family);
+        }
+
+        @Override protected IStatus run(IProgressMonitor monitor) {
+            if(monitor.isCanceled())
+                return StatusUtils.cancel();
+            applyStyle(styles, text, modificationStamp, monitor);
+            return StatusUtils.success();
+        }
+    }
+
     private final class DocumentListener implements IDocumentListener {
         @Override public void documentAboutToBeChanged(DocumentEvent event) {
 
         }
 
         @Override public void documentChanged(DocumentEvent event) {
+            incrementalPresentation.damaged(event);
+            if(resource != null) {
+                updateScheduler.edited(resource);
+            }
             scheduleJob(false, true);
         }
     }
@@ -540,4 +774,12 @@ public abstract class MetaBorgEditor<I extends IInputUnit, P extends IParseUnit,
             }
         }
     }
+
+    private final class ViewportListener implements IViewportListener {
+        @Override public void viewportChanged(int verticalOffset) {
+            if(sourceViewer != null && document != null) {
+                viewport = visibleRegion();
+            }
+        }
+    }
 }
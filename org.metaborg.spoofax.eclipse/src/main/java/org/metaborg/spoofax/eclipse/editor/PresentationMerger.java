@@ -1,46 +1,202 @@
 package org.metaborg.spoofax.eclipse.editor;
 
-import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ITextPresentationListener;
 import org.eclipse.jface.text.TextPresentation;
 import org.eclipse.swt.custom.StyleRange;
+import org.metaborg.spoofax.eclipse.util.Nullable;
 import org.metaborg.spoofax.eclipse.util.StyleUtils;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 public class PresentationMerger implements ITextPresentationListener {
-    private volatile TextPresentation sourcePresentation;
-    private volatile Collection<StyleRange> styleRanges;
+    private volatile Index index;
 
 
     public void set(TextPresentation presentation) {
-        // Make a deep copy of style ranges to prevent sharing with other ITextPresentationListeners.
-        styleRanges = StyleUtils.deepCopies(presentation);
-        sourcePresentation = presentation;
+        index = new Index(presentation, null);
+    }
+
+    /**
+     * Sets the style ranges of given presentation within its extent, and keeps the style ranges of the current
+     * presentation outside of that extent, such that styling a region does not drop the styling of the rest of the
+     * document.
+     */
+    public void overlay(TextPresentation presentation) {
+        index = new Index(presentation, index);
     }
 
     public void invalidate() {
-        sourcePresentation = null;
-        styleRanges = null;
+        index = null;
     }
 
 
     @Override public void applyTextPresentation(TextPresentation targetPresentation) {
+        final Index currentIndex = index;
         // No need to apply text presentation if source and target presentation are the same object.
-        if(sourcePresentation == null || targetPresentation == sourcePresentation) {
+        if(currentIndex == null || targetPresentation == currentIndex.sourcePresentation) {
             return;
         }
 
         final IRegion extent = targetPresentation.getExtent();
         final int min = extent.getOffset();
         final int max = min + extent.getLength();
-        for(StyleRange styleRange : styleRanges) {
-            final int styleRangeEnd = styleRange.start + styleRange.length;
-            // Not allowed to change style ranges outside of extent. Safe to skip since they will not be redrawn.
-            if(styleRange.start < min || styleRangeEnd > max) {
-                continue;
+        currentIndex.merge(targetPresentation, min, max);
+    }
+
+
+    /**
+     * Immutable index of the style ranges of a text presentation, sorted by start offset. Style ranges are stored as
+     * primitive arrays of offsets and lengths, and identifiers into a table of unique styles, such that the style
+     * ranges within an extent can be found using binary search.
+     */
+    private static final class Index {
+        private final TextPresentation sourcePresentation;
+        private final int[] starts;
+        private final int[] lengths;
+        private final int[] styleIds;
+        private final StyleRange[] styles;
+        private final int size;
+
+
+        /**
+         * Creates an index of the style ranges of given presentation, and the style ranges of given previous index
+         * that lie completely outside of the extent of given presentation.
+         */
+        public Index(TextPresentation presentation, @Nullable Index previous) {
+            this.sourcePresentation = presentation;
+
+            final IRegion extent = presentation.getExtent();
+            final int min = extent.getOffset();
+            final int max = min + extent.getLength();
+            final int capacity = presentation.getDenumerableRanges() + (previous != null ? previous.size : 0);
+            final Builder builder = new Builder(capacity);
+
+            // Style ranges in a text presentation are ordered and do not overlap, which keeps the arrays sorted.
+            if(previous != null) {
+                for(int i = 0; i < previous.size && previous.starts[i] < min; ++i) {
+                    if(previous.starts[i] + previous.lengths[i] <= min) {
+                        builder.add(previous.starts[i], previous.lengths[i], previous.styles[previous.styleIds[i]]);
+                    }
+                }
+            }
+            for(Iterator<StyleRange> iter = presentation.getNonDefaultStyleRangeIterator(); iter.hasNext();) {
+                final StyleRange styleRange = iter.next();
+                builder.add(styleRange.start, styleRange.length, styleRange);
+            }
+            if(previous != null) {
+                for(int i = previous.firstStartingAt(max); i < previous.size; ++i) {
+                    builder.add(previous.starts[i], previous.lengths[i], previous.styles[previous.styleIds[i]]);
+                }
+            }
+
+            this.starts = builder.starts;
+            this.lengths = builder.lengths;
+            this.styleIds = builder.styleIds;
+            this.styles = builder.styles.toArray(new StyleRange[builder.styles.size()]);
+            this.size = builder.size;
+        }
+
+
+        /**
+         * Merges all style ranges that lie completely within given extent into given presentation.
+         */
+        public void merge(TextPresentation targetPresentation, int min, int max) {
+            for(int i = firstStartingAt(min); i < size; ++i) {
+                final int start = starts[i];
+                final int end = start + lengths[i];
+                // Not allowed to change style ranges outside of extent. Safe to skip since they will not be redrawn.
+                // Ends are ordered as well, so no further style ranges lie within the extent.
+                if(end > max) {
+                    break;
+                }
+                // Create a new style range to prevent sharing with other ITextPresentationListeners.
+                final StyleRange styleRange = StyleUtils.deepCopy(styles[styleIds[i]]);
+                styleRange.start = start;
+                styleRange.length = lengths[i];
+                targetPresentation.mergeStyleRange(styleRange);
+            }
+        }
+
+        /**
+         * @return Index of the first style range that starts at or after given offset, or {@link #size} if there is
+         *         none.
+         */
+        private int firstStartingAt(int offset) {
+            int low = 0;
+            int high = size;
+            while(low < high) {
+                final int mid = (low + high) >>> 1;
+                if(starts[mid] < offset) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+
+    private static final class Builder {
+        private int[] starts;
+        private int[] lengths;
+        private int[] styleIds;
+        private final Map<Integer, List<Integer>> hashToIds = Maps.newHashMap();
+        private final List<StyleRange> styles = Lists.newArrayList();
+        private int size = 0;
+
+
+        public Builder(int capacity) {
+            this.starts = new int[Math.max(capacity, 1)];
+            this.lengths = new int[starts.length];
+            this.styleIds = new int[starts.length];
+        }
+
+
+        public void add(int start, int length, StyleRange styleRange) {
+            if(size == starts.length) {
+                starts = grow(starts);
+                lengths = grow(lengths);
+                styleIds = grow(styleIds);
             }
-            targetPresentation.mergeStyleRange(styleRange);
+            starts[size] = start;
+            lengths[size] = length;
+            styleIds[size] = styleId(styleRange);
+            ++size;
+        }
+
+
+        private int styleId(StyleRange styleRange) {
+            // The hash code of a style range only depends on its style, not on its offsets.
+            final int hash = styleRange.hashCode();
+            List<Integer> ids = hashToIds.get(hash);
+            if(ids == null) {
+                ids = Lists.newArrayListWithCapacity(1);
+                hashToIds.put(hash, ids);
+            } else {
+                for(int id : ids) {
+                    if(styles.get(id).similarTo(styleRange)) {
+                        return id;
+                    }
+                }
+            }
+            // Copy the style once, since style ranges in the source presentation may be changed by other listeners.
+            final int newId = styles.size();
+            styles.add(StyleUtils.deepCopy(styleRange));
+            ids.add(newId);
+            return newId;
+        }
+
+        private static int[] grow(int[] array) {
+            final int[] newArray = new int[array.length * 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            return newArray;
         }
     }
 }
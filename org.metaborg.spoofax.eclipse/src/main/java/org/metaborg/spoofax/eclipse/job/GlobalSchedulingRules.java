@@ -1,5 +1,17 @@
 package org.metaborg.spoofax.eclipse.job;
 
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.vfs2.FileName;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.metaborg.core.context.IContext;
+
+import com.google.common.collect.MapMaker;
+
 /**
  * Collection of global scheduling rules.
  */
@@ -7,6 +19,12 @@ public class GlobalSchedulingRules {
     private final LockRule startupLock = new LockRule("Startup write lock");
     private final LockRule languageServiceLock = new LockRule("Language service lock");
     private final LockRule strategoLock = new LockRule("Stratego lock");
+    private final LockRulePool strategoPool =
+        new LockRulePool("Stratego pool lock", Runtime.getRuntime().availableProcessors());
+    /**
+     * Context lock rules, with weak values such that rules of contexts that no job holds or waits for are removed.
+     */
+    private final ConcurrentMap<FileName, LockRule> contextLocks = new MapMaker().weakValues().makeMap();
 
 
     /**
@@ -40,12 +58,61 @@ public class GlobalSchedulingRules {
     }
 
     /**
-     * Returns the read/write lock rule for exclusive access to Stratego calls, which are (apparently) not thread-safe.
-     * Use to schedule jobs that do Stratego calls.
+     * Returns the read/write lock rule for exclusive access to the Stratego runtimes. Use to schedule jobs that change
+     * Stratego runtimes, such as loading or unloading languages. Use {@link #strategoReadLock(Job)} to get a read-only
+     * lock rule for jobs that only do Stratego calls.
      * 
      * @return Stratego read/write lock scheduling rule.
      */
     public LockRule strategoLock() {
         return strategoLock;
     }
+
+    /**
+     * Returns a new read-only lock rule for Stratego calls, which blocks while Stratego runtimes are changed, and when
+     * the maximum number of concurrent Stratego calls, the number of available processors, is reached. Each holder
+     * uses its own Stratego runtime, created by the Stratego runtime service for every call. Use to schedule jobs that
+     * do Stratego calls, together with {@link #contextLock(IContext)} when calls are made in a context.
+     * 
+     * @param job
+     *            Job that uses the returned rule. Its slot in the pool of concurrent Stratego calls is released
+     *            when the job is done.
+     * @return New Stratego read-only lock scheduling rule.
+     */
+    public ISchedulingRule strategoReadLock(Job job) {
+        final LockRule slot = strategoPool.acquire();
+        job.addJobChangeListener(new JobChangeAdapter() {
+            @Override public void done(IJobChangeEvent event) {
+                job.removeJobChangeListener(this);
+                strategoPool.release(slot);
+            }
+        });
+        return new MultiRule(new ISchedulingRule[] { new ReadLockRule(strategoLock, "Stratego read lock"), slot });
+    }
+
+    /**
+     * @return Maximum number of jobs that concurrently hold a {@link #strategoReadLock(Job)}.
+     */
+    public int strategoConcurrency() {
+        return strategoPool.size();
+    }
+
+    /**
+     * Returns the lock rule for exclusive access to given context. Jobs that analyze files in the same context, such as
+     * all files of a project for languages with a project context, conflict; jobs in independent contexts do not.
+     * 
+     * @param context
+     *            Context to get the lock rule for.
+     * @return Context lock scheduling rule.
+     */
+    public LockRule contextLock(IContext context) {
+        final FileName location = context.location().getName();
+        final LockRule rule = contextLocks.get(location);
+        if(rule != null) {
+            return rule;
+        }
+        final LockRule newRule = new LockRule("Context lock for " + location);
+        final LockRule existingRule = contextLocks.putIfAbsent(location, newRule);
+        return existingRule != null ? existingRule : newRule;
+    }
 }
@@ -15,7 +15,8 @@ public class LockRule implements ISchedulingRule {
 
 
     @Override public boolean isConflicting(ISchedulingRule rule) {
-        return rule == this;
+        // Scheduling rules must be symmetric, also conflict with read locks of this lock.
+        return rule == this || rule instanceof ReadLockRule && ((ReadLockRule) rule).writeLock() == this;
     }
 
     @Override public boolean contains(ISchedulingRule rule) {
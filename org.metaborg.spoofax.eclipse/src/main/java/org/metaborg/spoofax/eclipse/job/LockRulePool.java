@@ -0,0 +1,68 @@
+package org.metaborg.spoofax.eclipse.job;
+
+/**
+ * Fixed size pool of lock rules, which mimics a semaphore: at most as many jobs as there are lock rules in the pool can
+ * run concurrently when each job uses a lock rule from the pool. Each acquired lock rule must be released when the job
+ * that uses it is done. A lock rule that is not acquired by any job is handed out first, otherwise the lock rule with
+ * the fewest holders. Since the rule of a job is fixed when the job is scheduled, a job queues on its lock rule, and
+ * may still wait for it while another lock rule becomes free.
+ */
+public class LockRulePool {
+    private final LockRule[] rules;
+    private final int[] holders;
+
+
+    public LockRulePool(String name, int size) {
+        if(size < 1) {
+            throw new IllegalArgumentException("Size of lock rule pool " + name + " must be at least 1, got " + size);
+        }
+        this.rules = new LockRule[size];
+        this.holders = new int[size];
+        for(int i = 0; i < size; ++i) {
+            rules[i] = new LockRule(name + " " + (i + 1) + "/" + size);
+        }
+    }
+
+
+    /**
+     * @return Number of lock rules in the pool, which is the maximum number of concurrent holders.
+     */
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * Acquires the lock rule with the fewest holders. Must be matched by {@link #release(LockRule)}.
+     *
+     * @return Acquired lock rule.
+     */
+    public synchronized LockRule acquire() {
+        int index = 0;
+        for(int i = 1; i < rules.length && holders[index] > 0; ++i) {
+            if(holders[i] < holders[index]) {
+                index = i;
+            }
+        }
+        ++holders[index];
+        return rules[index];
+    }
+
+    /**
+     * Releases given lock rule, acquired with {@link #acquire()}.
+     *
+     * @param rule
+     *            Lock rule to release.
+     */
+    public synchronized void release(LockRule rule) {
+        for(int i = 0; i < rules.length; ++i) {
+            if(rules[i] == rule) {
+                if(holders[i] == 0) {
+                    throw new IllegalStateException("Lock rule " + rule + " was released more often than acquired");
+                }
+                --holders[i];
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Lock rule " + rule + " is not part of this pool");
+    }
+}
@@ -16,6 +16,14 @@ public class ReadLockRule implements ISchedulingRule {
     }
 
 
+    /**
+     * @return Write lock rule that this read lock rule conflicts with.
+     */
+    public LockRule writeLock() {
+        return writeLock;
+    }
+
+
     @Override public boolean isConflicting(ISchedulingRule rule) {
         return rule == this || rule == writeLock;
     }
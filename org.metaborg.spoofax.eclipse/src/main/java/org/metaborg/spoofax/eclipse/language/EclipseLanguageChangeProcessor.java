@@ -4,10 +4,7 @@ import java.util.Collection;
 import java.util.Set;
 
 import org.apache.commons.vfs2.FileObject;
-import org.apache.commons.vfs2.FileSystemException;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IWorkspace;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IEditorRegistry;
@@ -17,12 +14,12 @@ import org.metaborg.core.language.ILanguageCache;
 import org.metaborg.core.language.ILanguageComponent;
 import org.metaborg.core.language.ILanguageIdentifierService;
 import org.metaborg.core.language.ILanguageImpl;
-import org.metaborg.core.language.LanguageFileSelector;
 import org.metaborg.core.language.ResourceExtensionFacet;
 import org.metaborg.core.language.dialect.IDialectProcessor;
 import org.metaborg.core.processing.LanguageChangeProcessor;
 import org.metaborg.core.processing.analyze.IAnalysisResultProcessor;
 import org.metaborg.core.processing.parse.IParseResultProcessor;
+import org.metaborg.spoofax.eclipse.build.ProjectBuildCache;
 import org.metaborg.spoofax.eclipse.editor.SpoofaxEditor;
 import org.metaborg.spoofax.eclipse.resource.IEclipseResourceService;
 import org.metaborg.spoofax.eclipse.util.EditorMappingUtils;
@@ -45,8 +42,9 @@ public class EclipseLanguageChangeProcessor extends LanguageChangeProcessor {
 
     private final IEclipseResourceService resourceService;
     private final ILanguageIdentifierService languageIdentifier;
+    private final ProjectBuildCache buildCache;
+    private final LanguageFileIndex fileIndex;
 
-    private final IWorkspace workspace;
     private final IEditorRegistry eclipseEditorRegistry;
     private final Display display;
 
@@ -55,13 +53,14 @@ public class EclipseLanguageChangeProcessor extends LanguageChangeProcessor {
         ILanguageIdentifierService languageIdentifier, IDialectProcessor dialectProcessor,
         IContextProcessor contextProcessor, IParseResultProcessor<?, ?> parseResultProcessor,
         IAnalysisResultProcessor<?, ?, ?> analysisResultProcessor, org.metaborg.core.editor.IEditorRegistry editorRegistry,
-        Set<ILanguageCache> languageCaches) {
+        Set<ILanguageCache> languageCaches, ProjectBuildCache buildCache, LanguageFileIndex fileIndex) {
         super(dialectProcessor, contextProcessor, parseResultProcessor, analysisResultProcessor, editorRegistry, languageCaches);
 
         this.resourceService = resourceService;
         this.languageIdentifier = languageIdentifier;
+        this.buildCache = buildCache;
+        this.fileIndex = fileIndex;
 
-        this.workspace = ResourcesPlugin.getWorkspace();
         this.eclipseEditorRegistry = PlatformUI.getWorkbench().getEditorRegistry();
         this.display = Display.getDefault();
     }
@@ -70,7 +69,21 @@ public class EclipseLanguageChangeProcessor extends LanguageChangeProcessor {
     @Override public void addedComponent(ILanguageComponent component) {
         logger.debug("Running component added tasks for {}", component);
 
-        final Set<String> extensions = getExtensions(component);
+        // Dependencies of projects may have been added.
+        buildCache.invalidateAll();
+
+        associate(getExtensions(component));
+
+        super.addedComponent(component);
+    }
+
+    /**
+     * Associates given extensions to the Spoofax editor, for languages whose components are not loaded yet.
+     *
+     * @param extensions
+     *            Extensions to associate.
+     */
+    public void associate(final Set<String> extensions) {
         if(!extensions.isEmpty()) {
             logger.debug("Associating extension(s) {} to Spoofax editor", Joiner.on(", ").join(extensions));
             display.asyncExec(new Runnable() {
@@ -79,13 +92,13 @@ public class EclipseLanguageChangeProcessor extends LanguageChangeProcessor {
                 }
             });
         }
-
-        super.addedComponent(component);
     }
 
     @Override public void reloadedComponent(ILanguageComponent oldComponent, ILanguageComponent newComponent) {
         logger.debug("Running component reloaded tasks for {}", newComponent);
 
+        buildCache.invalidateAll();
+
         final Set<String> oldExtensions = getExtensions(oldComponent);
         final Set<String> newExtensions = getExtensions(newComponent);
         if(!oldExtensions.isEmpty() || !newExtensions.isEmpty()) {
@@ -112,6 +125,9 @@ public class EclipseLanguageChangeProcessor extends LanguageChangeProcessor {
     @Override protected void removedComponent(ILanguageComponent component) {
         logger.debug("Running component removed tasks for {}", component);
 
+        // Dependencies of projects may have been removed.
+        buildCache.invalidateAll();
+
         final Set<String> extensions = getExtensions(component);
         if(!extensions.isEmpty()) {
             logger.debug("Unassociating extension(s) {} from Spoofax editor", Joiner.on(", ").join(extensions));
@@ -127,24 +143,17 @@ public class EclipseLanguageChangeProcessor extends LanguageChangeProcessor {
 
     @Override public void removedImpl(ILanguageImpl language) {
         if(languageIdentifier.available(language)) {
-            try {
-                final Collection<FileObject> resources =
-                    ResourceUtils.workspaceResources(resourceService, new LanguageFileSelector(languageIdentifier,
-                        language), workspace.getRoot());
-                final Collection<IResource> eclipseResources =
-                    ResourceUtils.toEclipseResources(resourceService, resources);
-                logger.debug("Removing markers from {} workspace resources", resources.size());
-                for(IResource resource : eclipseResources) {
-                    try {
-                        MarkerUtils.clearAll(resource);
-                    } catch(CoreException e) {
-                        final String message = String.format("Cannot remove markers for resource %s", resource);
-                        logger.error(message, e);
-                    }
+            final Collection<FileObject> resources = fileIndex.resources(language);
+            final Collection<IResource> eclipseResources =
+                ResourceUtils.toEclipseResources(resourceService, resources);
+            logger.debug("Removing markers from {} workspace resources", resources.size());
+            for(IResource resource : eclipseResources) {
+                try {
+                    MarkerUtils.clearAll(resource);
+                } catch(CoreException e) {
+                    final String message = String.format("Cannot remove markers for resource %s", resource);
+                    logger.error(message, e);
                 }
-            } catch(FileSystemException e) {
-                final String message = String.format("Cannot retrieve all workspace resources for %s", language);
-                logger.error(message, e);
             }
         }
         
@@ -0,0 +1,315 @@
+package org.metaborg.spoofax.eclipse.language;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.vfs2.FileObject;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.metaborg.core.language.ILanguageIdentifierService;
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.core.language.ResourceExtensionFacet;
+import org.metaborg.spoofax.eclipse.resource.IEclipseResourceService;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+
+/**
+ * Index of the files in the workspace by project and file extension, such that finding the files of a language, or the
+ * files in a project, does not walk the file system. The index is built on first use, and maintained using resource
+ * deltas afterwards.
+ */
+public class LanguageFileIndex implements IResourceChangeListener {
+    private static final ILogger logger = LoggerUtils.logger(LanguageFileIndex.class);
+
+    private final IEclipseResourceService resourceService;
+    private final ILanguageIdentifierService languageIdentifier;
+
+    private final IWorkspaceRoot root;
+
+    /**
+     * Paths of indexed files, per project name, per extension.
+     */
+    private final Map<String, Map<String, Set<IPath>>> filesPerProject = Maps.newHashMap();
+    private boolean built = false;
+
+
+    @Inject public LanguageFileIndex(IEclipseResourceService resourceService,
+        ILanguageIdentifierService languageIdentifier) {
+        this.resourceService = resourceService;
+        this.languageIdentifier = languageIdentifier;
+        this.root = ResourcesPlugin.getWorkspace().getRoot();
+
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
+    }
+
+
+    /**
+     * Returns all files in the workspace of given language. Files are looked up by the extensions of the language,
+     * and identified to make sure they are of the language. Languages without extensions have all files in the
+     * workspace identified.
+     *
+     * @param language
+     *            Language to get files for.
+     * @return Files of given language.
+     */
+    public Collection<FileObject> resources(ILanguageImpl language) {
+        final Set<String> extensions = Sets.newHashSet();
+        for(ResourceExtensionFacet facet : language.facets(ResourceExtensionFacet.class)) {
+            Iterables.addAll(extensions, facet.extensions());
+        }
+
+        final Collection<IPath> candidates = extensions.isEmpty() ? files(root, null) : files(root, extensions);
+        final Collection<FileObject> resources = Lists.newArrayList();
+        for(IPath path : candidates) {
+            final FileObject resource = resourceService.resolve(path);
+            if(languageIdentifier.identify(resource, language)) {
+                resources.add(resource);
+            }
+        }
+        return resources;
+    }
+
+    /**
+     * Returns all files in given container.
+     *
+     * @param container
+     *            Container to get files for.
+     * @return Files in given container.
+     */
+    public Collection<FileObject> resources(IContainer container) {
+        final Collection<FileObject> resources = Lists.newArrayList();
+        for(IPath path : files(container, null)) {
+            resources.add(resourceService.resolve(path));
+        }
+        return resources;
+    }
+
+
+    /**
+     * Returns the projects in the workspace that have files with any of given extensions.
+     *
+     * @param extensions
+     *            Extensions to look for.
+     * @return Projects with files with any of given extensions.
+     */
+    public synchronized Collection<IProject> projects(Iterable<String> extensions) {
+        if(!built) {
+            build();
+        }
+
+        final Collection<IProject> projects = Lists.newArrayList();
+        for(Map.Entry<String, Map<String, Set<IPath>>> entry : filesPerProject.entrySet()) {
+            for(String extension : extensions) {
+                final Set<IPath> paths = entry.getValue().get(extension);
+                if(paths != null && !paths.isEmpty()) {
+                    projects.add(root.getProject(entry.getKey()));
+                    break;
+                }
+            }
+        }
+        return projects;
+    }
+
+
+    /**
+     * Returns the paths of indexed files in given container with given extensions, or with any extension if extensions
+     * is null. Only the files of the project of given container are looked at. Builds the index if it was not built
+     * yet.
+     */
+    private synchronized Collection<IPath> files(IContainer container, Iterable<String> extensions) {
+        if(!built) {
+            build();
+        }
+
+        final IPath containerPath = container.getFullPath();
+        final Collection<Map<String, Set<IPath>>> projects;
+        if(containerPath.segmentCount() == 0) {
+            projects = filesPerProject.values();
+        } else {
+            final Map<String, Set<IPath>> filesPerExtension = filesPerProject.get(containerPath.segment(0));
+            if(filesPerExtension == null) {
+                return Lists.newArrayList();
+            }
+            projects = Collections.singletonList(filesPerExtension);
+        }
+        // Files in a project do not need to be filtered when all files of the project are requested.
+        final boolean filter = containerPath.segmentCount() > 1;
+
+        final Collection<IPath> files = Lists.newArrayList();
+        for(Map<String, Set<IPath>> filesPerExtension : projects) {
+            final Iterable<Set<IPath>> pathSets;
+            if(extensions == null) {
+                pathSets = filesPerExtension.values();
+            } else {
+                final Collection<Set<IPath>> extensionPathSets = Lists.newArrayList();
+                for(String extension : extensions) {
+                    final Set<IPath> paths = filesPerExtension.get(extension);
+                    if(paths != null) {
+                        extensionPathSets.add(paths);
+                    }
+                }
+                pathSets = extensionPathSets;
+            }
+            for(Set<IPath> paths : pathSets) {
+                if(!filter) {
+                    files.addAll(paths);
+                    continue;
+                }
+                for(IPath path : paths) {
+                    if(containerPath.isPrefixOf(path)) {
+                        files.add(path);
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    private void build() {
+        final long start = System.currentTimeMillis();
+        filesPerProject.clear();
+        try {
+            add(root);
+        } catch(CoreException e) {
+            logger.error("Cannot build index of workspace files, using a partial index", e);
+        }
+        built = true;
+        logger.debug("Indexed workspace files in {}ms", System.currentTimeMillis() - start);
+    }
+
+    private void add(IContainer container) throws CoreException {
+        container.accept(new IResourceProxyVisitor() {
+            @Override public boolean visit(IResourceProxy proxy) throws CoreException {
+                if(proxy.getType() == IResource.FILE) {
+                    add(proxy.requestFullPath());
+                    return false;
+                }
+                return true;
+            }
+        }, IResource.NONE);
+    }
+
+    private void add(IPath path) {
+        final String project = path.segment(0);
+        Map<String, Set<IPath>> filesPerExtension = filesPerProject.get(project);
+        if(filesPerExtension == null) {
+            filesPerExtension = Maps.newHashMap();
+            filesPerProject.put(project, filesPerExtension);
+        }
+        final String extension = extension(path);
+        Set<IPath> paths = filesPerExtension.get(extension);
+        if(paths == null) {
+            paths = Sets.newHashSet();
+            filesPerExtension.put(extension, paths);
+        }
+        paths.add(path);
+    }
+
+    private void remove(IPath path) {
+        final Map<String, Set<IPath>> filesPerExtension = filesPerProject.get(path.segment(0));
+        if(filesPerExtension == null) {
+            return;
+        }
+        final Set<IPath> paths = filesPerExtension.get(extension(path));
+        if(paths != null) {
+            paths.remove(path);
+        }
+    }
+
+    private void removeAll(IPath containerPath) {
+        if(containerPath.segmentCount() == 0) {
+            filesPerProject.clear();
+            return;
+        }
+        final String project = containerPath.segment(0);
+        if(containerPath.segmentCount() == 1) {
+            filesPerProject.remove(project);
+            return;
+        }
+        final Map<String, Set<IPath>> filesPerExtension = filesPerProject.get(project);
+        if(filesPerExtension == null) {
+            return;
+        }
+        for(Set<IPath> paths : filesPerExtension.values()) {
+            for(Iterator<IPath> iterator = paths.iterator(); iterator.hasNext();) {
+                if(containerPath.isPrefixOf(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static String extension(IPath path) {
+        final String extension = path.getFileExtension();
+        return extension != null ? extension : "";
+    }
+
+
+    @Override public synchronized void resourceChanged(IResourceChangeEvent event) {
+        final IResourceDelta delta = event.getDelta();
+        if(!built || delta == null) {
+            return;
+        }
+
+        try {
+            delta.accept(new IResourceDeltaVisitor() {
+                @Override public boolean visit(IResourceDelta delta) throws CoreException {
+                    final IResource resource = delta.getResource();
+                    final boolean isFile = resource.getType() == IResource.FILE;
+                    switch(delta.getKind()) {
+                        case IResourceDelta.ADDED:
+                            if(isFile) {
+                                add(resource.getFullPath());
+                            }
+                            break;
+                        case IResourceDelta.REMOVED:
+                            if(isFile) {
+                                remove(resource.getFullPath());
+                            } else {
+                                removeAll(resource.getFullPath());
+                                return false;
+                            }
+                            break;
+                        case IResourceDelta.CHANGED:
+                            if((delta.getFlags() & IResourceDelta.OPEN) != 0) {
+                                // Members of opened or closed projects are not part of the delta.
+                                removeAll(resource.getFullPath());
+                                if(resource.isAccessible()) {
+                                    add((IContainer) resource);
+                                }
+                                return false;
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                    return true;
+                }
+            });
+        } catch(CoreException e) {
+            logger.error("Cannot update index of workspace files, rebuilding the index on next use", e);
+            built = false;
+        }
+    }
+}
@@ -2,16 +2,28 @@ package org.metaborg.spoofax.eclipse.language;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
 
 import org.apache.commons.vfs2.FileObject;
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IExtensionPoint;
 import org.eclipse.core.runtime.IExtensionRegistry;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.jobs.MultiRule;
@@ -24,36 +36,65 @@ import org.metaborg.core.language.dialect.IDialectProcessor;
 import org.metaborg.core.resource.ResourceChange;
 import org.metaborg.core.resource.ResourceChangeKind;
 import org.metaborg.core.resource.ResourceUtils;
+import org.metaborg.spoofax.eclipse.build.SpoofaxProjectBuilder;
 import org.metaborg.spoofax.eclipse.job.GlobalSchedulingRules;
 import org.metaborg.spoofax.eclipse.resource.IEclipseResourceService;
+import org.metaborg.spoofax.eclipse.util.BuilderUtils;
+import org.metaborg.spoofax.eclipse.util.Nullable;
+import org.metaborg.spoofax.eclipse.util.StatusUtils;
 import org.metaborg.util.log.ILogger;
 import org.metaborg.util.log.LoggerUtils;
 import org.osgi.framework.Bundle;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
 /**
  * Discovers all languages in plugins and workspace projects, and discovers languages when a project is opened.
+ * Languages in plugins that declare their extensions are deferred: they are discovered when they are first used in an
+ * editor, or in the background when Eclipse is idle.
  */
 public class LanguageLoader {
     private static final ILogger logger = LoggerUtils.logger(LanguageLoader.class);
 
+    /**
+     * Delay before deferred languages are loaded in the background, in milliseconds.
+     */
+    private static final long prefetchDelay = 5000;
+
     private final IEclipseResourceService resourceService;
     private final ILanguageService languageService;
     private final ILanguageDiscoveryService languageDiscoveryService;
     private final IDialectProcessor dialectProcessor;
+    private final LanguageFileIndex fileIndex;
+    private final LanguageReadiness readiness;
+    private final PluginLanguageCache pluginCache;
+    private final EclipseLanguageChangeProcessor changeProcessor;
 
     private final GlobalSchedulingRules globalRules;
     private final IWorkspaceRoot workspaceRoot;
 
+    private final List<PluginLanguage> deferredLanguages = Lists.newCopyOnWriteArrayList();
+    private final Set<PluginLanguage> activatedLanguages = Sets.newConcurrentHashSet();
+
 
     @Inject public LanguageLoader(IEclipseResourceService resourceService, ILanguageService languageService,
         ILanguageDiscoveryService languageDiscoveryService, IDialectProcessor dialectProcessor,
-        GlobalSchedulingRules globalRules) {
+        LanguageFileIndex fileIndex, LanguageReadiness readiness, PluginLanguageCache pluginCache,
+        EclipseLanguageChangeProcessor changeProcessor, GlobalSchedulingRules globalRules) {
         this.resourceService = resourceService;
         this.languageService = languageService;
         this.languageDiscoveryService = languageDiscoveryService;
         this.dialectProcessor = dialectProcessor;
+        this.fileIndex = fileIndex;
+        this.readiness = readiness;
+        this.pluginCache = pluginCache;
+        this.changeProcessor = changeProcessor;
         this.globalRules = globalRules;
         this.workspaceRoot = ResourcesPlugin.getWorkspace().getRoot();
     }
@@ -81,28 +122,19 @@ public class LanguageLoader {
      *            If unavailable requests should be skipped.
      */
     public void load(FileObject location, boolean skipUnavailable) {
+        final Iterable<ILanguageDiscoveryRequest> requests = request(location);
+        discover(location, requests, skipUnavailable);
+
         try {
-            final Iterable<ILanguageDiscoveryRequest> requests = languageDiscoveryService.request(location);
-            if(skipUnavailable) {
-                for(ILanguageDiscoveryRequest request : requests) {
-                    if(!request.available()) {
-                        logger.debug("Skipping loading language component at {}, "
-                            + "some resources are unavailable or the configuration is invalid", location);
-                        continue;
-                    }
-                    languageDiscoveryService.discover(request);
-                }
+            final Iterable<FileObject> resources;
+            final IResource eclipseLocation = resourceService.unresolve(location);
+            if(eclipseLocation instanceof IContainer && eclipseLocation.isAccessible()) {
+                // Look up files in the workspace index, instead of walking the location.
+                resources = fileIndex.resources((IContainer) eclipseLocation);
             } else {
-                languageDiscoveryService.discover(requests);
+                resources = ResourceUtils.find(location);
             }
-        } catch(MetaborgException e) {
-            logger.error("Could not discover language at location {}", e, location);
-        }
-
-        try {
-            final Iterable<FileObject> resources = ResourceUtils.find(location);
-            final Iterable<ResourceChange> creations = ResourceUtils.toChanges(resources, ResourceChangeKind.Create);
-            dialectProcessor.update(location, creations);
+            discoverDialects(location, resources);
         } catch(IOException e) {
             logger.error("Could not discover dialects at location {}", e, location);
         }
@@ -119,32 +151,71 @@ public class LanguageLoader {
      */
     public Job loadJob(FileObject location, boolean skipUnavailable) {
         final LoadLanguageJob job = new LoadLanguageJob(this, location, skipUnavailable);
-        job.setRule(new MultiRule(
-            new ISchedulingRule[] { workspaceRoot, globalRules.startupReadLock(), globalRules.languageServiceLock() }));
+        job.setRule(new MultiRule(new ISchedulingRule[] { workspaceRoot, globalRules.startupReadLock(),
+            globalRules.languageServiceLock(), globalRules.strategoLock() }));
         return job;
     }
 
     /**
-     * Loads all languages and dialects from plugins.
+     * Loads all languages and dialects from plugins. Discovery requests for languages of different plugins are created
+     * in parallel, whereas the languages are registered sequentially, in the order of their extensions. Marks each
+     * language as ready after registering it, and marks startup as finished after registering all languages. Languages
+     * that declare their extensions are deferred instead, and loaded in the background afterwards.
      */
     public void loadFromPlugins() {
+        try {
+            loadAllFromPlugins();
+        } finally {
+            readiness.startupFinished();
+        }
+    }
+
+    private void loadAllFromPlugins() {
         logger.debug("Loading languages from plugins");
+        final long start = System.currentTimeMillis();
+
         final IExtensionRegistry registry = Platform.getExtensionRegistry();
         final IExtensionPoint point = registry.getExtensionPoint("org.metaborg.spoofax.eclipse.language");
+        // Keep contributors in extension registry order, such that languages are registered in a deterministic order.
+        final ListMultimap<String, IConfigurationElement> configsPerContributor = LinkedListMultimap.create();
         for(IConfigurationElement config : point.getConfigurationElements()) {
             if(config.getName().equals("language")) {
-                final String relativeLocation = config.getAttribute("location");
                 final String contributor = config.getDeclaringExtension().getContributor().getName();
-                try {
-                    final Bundle bundle = Platform.getBundle(contributor);
-                    final File bundleLocationFile = FileLocator.getBundleFile(bundle);
-                    final FileObject bundleLocation = resourceService.resolve(bundleLocationFile);
-                    final FileObject location = bundleLocation.resolveFile(relativeLocation);
-                    load(location, false);
-                } catch(IOException e) {
-                    logger.error("Could not load language from {} in plugin {}", e, relativeLocation, contributor);
-                }
+                configsPerContributor.put(contributor, config);
+            }
+        }
+
+        // Resolving bundle files, reading language configurations, and finding dialect files is independent per plugin,
+        // run it in parallel.
+        final List<PluginLanguage> languages = Lists.newArrayList(configsPerContributor.keySet()).parallelStream()
+            .flatMap(contributor -> request(contributor, configsPerContributor.get(contributor)).stream())
+            .collect(Collectors.toList());
+
+        // Discovering and registering languages is not thread-safe, run it sequentially, in the order of the requests.
+        int loaded = 0;
+        for(PluginLanguage language : languages) {
+            if(language.extensions != null) {
+                defer(language);
+                continue;
+            }
+            ++loaded;
+            final long discoverStart = System.currentTimeMillis();
+            final Collection<ILanguageComponent> components = discover(language.location, language.requests, false);
+            if(language.files != null) {
+                discoverDialects(language.location, language.files);
             }
+            readiness.loaded(components);
+            final long discoverTime = System.currentTimeMillis() - discoverStart;
+            logger.debug("Loaded language from {} in plugin {} in {}ms ({}ms requesting, {}ms discovering)",
+                language.relativeLocation, language.contributor, language.requestTime + discoverTime,
+                language.requestTime, discoverTime);
+        }
+
+        logger.info("Loaded {} languages from plugins in {}ms, deferred {} languages", loaded,
+            System.currentTimeMillis() - start, deferredLanguages.size());
+
+        if(!deferredLanguages.isEmpty()) {
+            prefetchJob().schedule(prefetchDelay);
         }
     }
 
@@ -154,7 +225,7 @@ public class LanguageLoader {
     public Job loadFromPluginsJob() {
         final Job job = new DiscoverLanguagesFromPluginsJob(this);
         job.setRule(new MultiRule(new ISchedulingRule[] { workspaceRoot, globalRules.startupWriteLock(),
-            globalRules.languageServiceLock() }));
+            globalRules.languageServiceLock(), globalRules.strategoLock() }));
         job.schedule();
         return job;
     }
@@ -179,7 +250,13 @@ public class LanguageLoader {
     public void unload(FileObject location) {
         final ILanguageComponent component = languageService.getComponent(location.getName());
         if(component != null) {
-            languageService.remove(component);
+            final Lock registrationLock = readiness.registrationLock().writeLock();
+            registrationLock.lock();
+            try {
+                languageService.remove(component);
+            } finally {
+                registrationLock.unlock();
+            }
         } else {
             logger.debug("Cannot unload component at location {}, there is no component at that location", location);
         }
@@ -194,8 +271,241 @@ public class LanguageLoader {
      */
     public Job unloadJob(FileObject location) {
         final UnloadLanguageJob job = new UnloadLanguageJob(this, location);
-        job.setRule(new MultiRule(
-            new ISchedulingRule[] { workspaceRoot, globalRules.startupReadLock(), globalRules.languageServiceLock() }));
+        job.setRule(new MultiRule(new ISchedulingRule[] { workspaceRoot, globalRules.startupReadLock(),
+            globalRules.languageServiceLock(), globalRules.strategoLock() }));
         return job;
     }
+
+
+    private List<PluginLanguage> request(String contributor, List<IConfigurationElement> configs) {
+        final List<PluginLanguage> languages = Lists.newArrayListWithCapacity(configs.size());
+        final Bundle bundle = Platform.getBundle(contributor);
+        final FileObject bundleLocation;
+        try {
+            final File bundleLocationFile = FileLocator.getBundleFile(bundle);
+            bundleLocation = resourceService.resolve(bundleLocationFile);
+        } catch(IOException e) {
+            logger.error("Could not load languages from plugin {}", e, contributor);
+            return languages;
+        }
+
+        for(IConfigurationElement config : configs) {
+            final String relativeLocation = config.getAttribute("location");
+            final Set<String> extensions = extensions(config);
+            try {
+                final long start = System.currentTimeMillis();
+                final FileObject location = bundleLocation.resolveFile(relativeLocation);
+                if(extensions != null) {
+                    // Deferred language, skip requesting until it is used.
+                    languages.add(
+                        new PluginLanguage(contributor, bundle, relativeLocation, location, extensions, null, null, 0));
+                    continue;
+                }
+                final Iterable<ILanguageDiscoveryRequest> requests = request(location);
+                Iterable<FileObject> files;
+                try {
+                    files = pluginCache.files(bundle, relativeLocation, location);
+                } catch(IOException e) {
+                    logger.error("Could not discover dialects at location {}", e, location);
+                    files = null;
+                }
+                final long requestTime = System.currentTimeMillis() - start;
+                languages.add(new PluginLanguage(contributor, bundle, relativeLocation, location, null, requests, files,
+                    requestTime));
+            } catch(IOException e) {
+                logger.error("Could not load language from {} in plugin {}", e, relativeLocation, contributor);
+            }
+        }
+        return languages;
+    }
+
+    private static @Nullable Set<String> extensions(IConfigurationElement config) {
+        final String extensionsAttribute = config.getAttribute("extensions");
+        if(extensionsAttribute == null) {
+            return null;
+        }
+        final Set<String> extensions =
+            Sets.newHashSet(Splitter.on(',').trimResults().omitEmptyStrings().split(extensionsAttribute));
+        return extensions.isEmpty() ? null : extensions;
+    }
+
+    private void defer(PluginLanguage language) {
+        logger.debug("Deferring loading language from {} in plugin {} until extension(s) {} are used",
+            language.relativeLocation, language.contributor, language.extensions);
+        deferredLanguages.add(language);
+        changeProcessor.associate(language.extensions);
+        readiness.defer(language.extensions, () -> activateJob(language).schedule());
+    }
+
+    private Job activateJob(PluginLanguage language) {
+        final Job job = new Job("Loading Spoofax language") {
+            @Override protected IStatus run(IProgressMonitor monitor) {
+                activate(language);
+                return StatusUtils.success();
+            }
+        };
+        job.setPriority(Job.SHORT);
+        job.setSystem(true);
+        job.setRule(new MultiRule(new ISchedulingRule[] { workspaceRoot, globalRules.startupReadLock(),
+            globalRules.languageServiceLock(), globalRules.strategoLock() }));
+        return job;
+    }
+
+    /**
+     * Creates a job that loads the next deferred language that was not loaded yet, and reschedules itself until all
+     * deferred languages are loaded, such that other jobs can run in between.
+     */
+    private Job prefetchJob() {
+        final Job job = new Job("Loading deferred Spoofax languages") {
+            @Override protected IStatus run(IProgressMonitor monitor) {
+                for(PluginLanguage language : deferredLanguages) {
+                    if(monitor.isCanceled()) {
+                        return StatusUtils.cancel();
+                    }
+                    if(!activatedLanguages.contains(language)) {
+                        activate(language);
+                        schedule();
+                        break;
+                    }
+                }
+                return StatusUtils.success();
+            }
+        };
+        job.setPriority(Job.DECORATE);
+        job.setSystem(true);
+        // Do not lock the workspace root, such that prefetching in the background does not block builds and saves.
+        job.setRule(new MultiRule(new ISchedulingRule[] { globalRules.startupReadLock(),
+            globalRules.languageServiceLock(), globalRules.strategoLock() }));
+        return job;
+    }
+
+    private void activate(PluginLanguage language) {
+        if(!activatedLanguages.add(language)) {
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        try {
+            final Iterable<ILanguageDiscoveryRequest> requests = request(language.location);
+            final Collection<ILanguageComponent> components = discover(language.location, requests, false);
+            try {
+                discoverDialects(language.location,
+                    pluginCache.files(language.bundle, language.relativeLocation, language.location));
+            } catch(IOException e) {
+                logger.error("Could not discover dialects at location {}", e, language.location);
+            }
+            readiness.loaded(components);
+            if(!components.isEmpty()) {
+                buildJob(fileIndex.projects(language.extensions)).schedule();
+            }
+        } finally {
+            // Also when loading fails, such that resources of the language do not wait forever.
+            readiness.activated(language.extensions);
+        }
+        logger.debug("Loaded deferred language from {} in plugin {} in {}ms", language.relativeLocation,
+            language.contributor, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Creates a job that fully builds given projects, such that files of a deferred language that were not processed
+     * while the language was not loaded yet are built.
+     */
+    private Job buildJob(Collection<IProject> projects) {
+        final Job job = new Job("Building projects of loaded Spoofax language") {
+            @Override protected IStatus run(IProgressMonitor monitor) {
+                final SubMonitor progress = SubMonitor.convert(monitor, projects.size());
+                for(IProject project : projects) {
+                    if(progress.isCanceled()) {
+                        return StatusUtils.cancel();
+                    }
+                    try {
+                        if(project.isAccessible() && BuilderUtils.contains(SpoofaxProjectBuilder.id, project)) {
+                            project.build(IncrementalProjectBuilder.FULL_BUILD, SpoofaxProjectBuilder.id, null,
+                                progress.newChild(1));
+                        }
+                    } catch(CoreException e) {
+                        logger.error("Cannot build project {} after loading its language", e, project);
+                    }
+                }
+                return StatusUtils.success();
+            }
+        };
+        job.setRule(ResourcesPlugin.getWorkspace().getRuleFactory().buildRule());
+        return job;
+    }
+
+    private @Nullable Iterable<ILanguageDiscoveryRequest> request(FileObject location) {
+        try {
+            return languageDiscoveryService.request(location);
+        } catch(MetaborgException e) {
+            logger.error("Could not discover language at location {}", e, location);
+            return null;
+        }
+    }
+
+    private Collection<ILanguageComponent> discover(FileObject location,
+        @Nullable Iterable<ILanguageDiscoveryRequest> requests, boolean skipUnavailable) {
+        final Collection<ILanguageComponent> components = Lists.newArrayList();
+        if(requests != null) {
+            // Editors of languages that are ready identify languages while other languages are registered.
+            final Lock registrationLock = readiness.registrationLock().writeLock();
+            registrationLock.lock();
+            try {
+                if(skipUnavailable) {
+                    for(ILanguageDiscoveryRequest request : requests) {
+                        if(!request.available()) {
+                            logger.debug("Skipping loading language component at {}, "
+                                + "some resources are unavailable or the configuration is invalid", location);
+                            continue;
+                        }
+                        components.add(languageDiscoveryService.discover(request));
+                    }
+                } else {
+                    Iterables.addAll(components, languageDiscoveryService.discover(requests));
+                }
+            } catch(MetaborgException e) {
+                logger.error("Could not discover language at location {}", e, location);
+            } finally {
+                registrationLock.unlock();
+            }
+        }
+        return components;
+    }
+
+    private void discoverDialects(FileObject location, Iterable<FileObject> resources) {
+        final Iterable<ResourceChange> creations = ResourceUtils.toChanges(resources, ResourceChangeKind.Create);
+        final Lock registrationLock = readiness.registrationLock().writeLock();
+        registrationLock.lock();
+        try {
+            dialectProcessor.update(location, creations);
+        } finally {
+            registrationLock.unlock();
+        }
+    }
+
+
+    private static final class PluginLanguage {
+        public final String contributor;
+        public final Bundle bundle;
+        public final String relativeLocation;
+        public final FileObject location;
+        public final @Nullable Set<String> extensions;
+        public final @Nullable Iterable<ILanguageDiscoveryRequest> requests;
+        public final @Nullable Iterable<FileObject> files;
+        public final long requestTime;
+
+
+        public PluginLanguage(String contributor, Bundle bundle, String relativeLocation, FileObject location,
+            @Nullable Set<String> extensions, @Nullable Iterable<ILanguageDiscoveryRequest> requests,
+            @Nullable Iterable<FileObject> files, long requestTime) {
+            this.contributor = contributor;
+            this.bundle = bundle;
+            this.relativeLocation = relativeLocation;
+            this.location = location;
+            this.extensions = extensions;
+            this.requests = requests;
+            this.files = files;
+            this.requestTime = requestTime;
+        }
+    }
 }
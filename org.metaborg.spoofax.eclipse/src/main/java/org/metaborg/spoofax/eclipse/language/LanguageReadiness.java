@@ -0,0 +1,178 @@
+package org.metaborg.spoofax.eclipse.language;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.language.ILanguageComponent;
+import org.metaborg.core.language.ResourceExtensionFacet;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+
+/**
+ * Tracks which languages are ready while languages are loaded from plugins during startup, such that editors only
+ * wait for the language of their resource, instead of for all languages. Languages are tracked by the file extensions
+ * of their components. Resources with an extension that is not contributed by a loaded language become ready when
+ * startup is finished. Languages that are loaded lazily are deferred: they become ready when they are loaded, which is
+ * started when a resource of the language is first requested. Only languages from plugins are tracked; languages
+ * from workspace projects are loaded under the startup lock, see {@link #claimed(FileObject)}. Since editors of ready
+ * languages run while other languages are still being loaded, languages are registered under the
+ * {@link #registrationLock()}.
+ */
+public class LanguageReadiness {
+    private static final ILogger logger = LoggerUtils.logger(LanguageReadiness.class);
+
+    private final CompletableFuture<Void> startup = new CompletableFuture<>();
+    private final ConcurrentMap<String, CompletableFuture<Void>> extensions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Deferred> deferred = new ConcurrentHashMap<>();
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+    private final ReadWriteLock registrationLock = new ReentrantReadWriteLock();
+
+
+    /**
+     * Returns the lock that guards registering languages in the language service. The write lock is held while a
+     * language is registered. The read lock must be held while identifying the language of a resource without a
+     * scheduling rule that excludes loading languages, and only for as long as identification takes.
+     *
+     * @return Language registration lock.
+     */
+    public ReadWriteLock registrationLock() {
+        return registrationLock;
+    }
+
+    /**
+     * Returns a future that completes when the language of given resource is ready. Completes immediately after
+     * startup, unless the language of given resource is deferred, in which case loading the language is started.
+     *
+     * @param resource
+     *            Resource to get the readiness of.
+     * @return Future that completes when the language of given resource is ready.
+     */
+    public CompletableFuture<Void> ready(FileObject resource) {
+        final Deferred deferredLanguage = deferred.get(resource.getName().getExtension());
+        if(deferredLanguage != null) {
+            deferredLanguage.activate();
+            return deferredLanguage.future;
+        }
+        if(startup.isDone()) {
+            return startup;
+        }
+        final CompletableFuture<Void> future =
+            extensions.computeIfAbsent(resource.getName().getExtension(), extension -> new CompletableFuture<>());
+        // Startup may have finished before the future was added, in which case nothing completes it.
+        if(startup.isDone()) {
+            future.complete(null);
+        }
+        return future;
+    }
+
+    /**
+     * Returns true if the extension of given resource is claimed by a language from a plugin, that is loaded or
+     * deferred. Resources with other extensions may be of a language from a workspace project, which is loaded while
+     * holding the startup write lock, so jobs for these resources must also take the startup read lock.
+     *
+     * @param resource
+     *            Resource to check.
+     * @return True if the extension of given resource is claimed by a language from a plugin, false otherwise.
+     */
+    public boolean claimed(FileObject resource) {
+        return claimed.contains(resource.getName().getExtension());
+    }
+
+    /**
+     * Defers the language with given extensions, which is loaded lazily. Starts loading the language immediately if a
+     * resource of the language was requested already.
+     *
+     * @param languageExtensions
+     *            Extensions of the deferred language.
+     * @param activation
+     *            Starts loading the deferred language. Called at most once.
+     */
+    public void defer(Iterable<String> languageExtensions, Runnable activation) {
+        final Deferred deferredLanguage = new Deferred(activation);
+        for(String extension : languageExtensions) {
+            claimed.add(extension);
+            deferred.put(extension, deferredLanguage);
+            final CompletableFuture<Void> future = extensions.remove(extension);
+            if(future != null) {
+                deferredLanguage.future.thenRun(() -> future.complete(null));
+                deferredLanguage.activate();
+            }
+        }
+    }
+
+    /**
+     * Marks the languages of given loaded components as ready.
+     *
+     * @param components
+     *            Loaded components.
+     */
+    public void loaded(Iterable<ILanguageComponent> components) {
+        for(ILanguageComponent component : components) {
+            for(ResourceExtensionFacet facet : component.facets(ResourceExtensionFacet.class)) {
+                for(String extension : facet.extensions()) {
+                    claimed.add(extension);
+                    final Deferred deferredLanguage = deferred.remove(extension);
+                    if(deferredLanguage != null) {
+                        deferredLanguage.future.complete(null);
+                    }
+                    if(!startup.isDone()) {
+                        extensions.computeIfAbsent(extension, e -> new CompletableFuture<>()).complete(null);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the deferred language with given extensions as ready, also if loading it did not produce any components
+     * with these extensions, such that resources of the language do not wait forever.
+     *
+     * @param languageExtensions
+     *            Extensions of the deferred language.
+     */
+    public void activated(Iterable<String> languageExtensions) {
+        for(String extension : languageExtensions) {
+            final Deferred deferredLanguage = deferred.remove(extension);
+            if(deferredLanguage != null) {
+                deferredLanguage.future.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Marks startup as finished, making all languages that are not deferred ready.
+     */
+    public void startupFinished() {
+        logger.debug("Startup finished, all languages are ready");
+        startup.complete(null);
+        for(CompletableFuture<Void> future : extensions.values()) {
+            future.complete(null);
+        }
+        extensions.clear();
+    }
+
+
+    private static final class Deferred {
+        public final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final Runnable activation;
+        private final AtomicBoolean activated = new AtomicBoolean();
+
+
+        public Deferred(Runnable activation) {
+            this.activation = activation;
+        }
+
+
+        public void activate() {
+            if(activated.compareAndSet(false, true)) {
+                activation.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.metaborg.spoofax.eclipse.language;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.resource.ResourceUtils;
+import org.metaborg.spoofax.eclipse.SpoofaxPlugin;
+import org.metaborg.spoofax.eclipse.util.Nullable;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+import org.osgi.framework.Bundle;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Caches the file listing of languages in plugins on disk, in the state location of this plugin, such that discovering
+ * dialects of plugin languages does not walk the files of the plugin on every start. Only the listing is cached; the
+ * languages themselves are still requested and discovered from the plugin on every start. Entries are stored in a
+ * directory per bundle, and keyed by the version and last modification time of the bundle, and the location of the
+ * language in the bundle, such that updated plugins get a new entry. Entries are stored with a magic number, a format
+ * version, and a checksum of their payload; entries of another format version, with an invalid length, or with an
+ * invalid checksum are ignored. Entries are written to a temporary file first, such that a failed write does not leave
+ * a partial entry.
+ */
+public class PluginLanguageCache {
+    private static final ILogger logger = LoggerUtils.logger(PluginLanguageCache.class);
+
+    private static final String directoryName = "languagecache";
+    private static final int magic = 0x5350584c;
+    private static final int version = 1;
+
+
+    /**
+     * Returns the files at given location of a language in given bundle, from the cache if it has a valid entry, or
+     * by finding all files at the location and caching them otherwise.
+     *
+     * @param bundle
+     *            Bundle that contains the language.
+     * @param relativeLocation
+     *            Location of the language, relative to the bundle.
+     * @param location
+     *            Location of the language.
+     * @return Files at given location.
+     * @throws IOException
+     *             When finding files at given location fails.
+     */
+    public Iterable<FileObject> files(Bundle bundle, String relativeLocation, FileObject location) throws IOException {
+        final File file = file(bundle, relativeLocation);
+        if(file != null) {
+            final List<String> cachedNames = load(file);
+            if(cachedNames != null) {
+                final Collection<FileObject> files = Lists.newArrayListWithCapacity(cachedNames.size());
+                for(String name : cachedNames) {
+                    files.add(location.resolveFile(name));
+                }
+                logger.trace("Using {} cached files of {} in plugin {}", files.size(), relativeLocation,
+                    bundle.getSymbolicName());
+                return files;
+            }
+        }
+
+        final Iterable<FileObject> files = ResourceUtils.find(location);
+        if(file != null) {
+            final FileName locationName = location.getName();
+            final List<String> names = Lists.newArrayList();
+            for(FileObject resource : files) {
+                names.add(locationName.getRelativeName(resource.getName()));
+            }
+            save(file, names);
+            deleteStale(bundle, file);
+        }
+        return files;
+    }
+
+
+    private @Nullable List<String> load(File file) {
+        try {
+            final byte[] payload = read(file);
+            if(payload == null) {
+                return null;
+            }
+            try(DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload))) {
+                final int count = input.readInt();
+                final List<String> names = Lists.newArrayListWithCapacity(count);
+                for(int i = 0; i < count; ++i) {
+                    names.add(input.readUTF());
+                }
+                return names;
+            }
+        } catch(IOException | RuntimeException e) {
+            logger.warn("Ignoring cached plugin language files {}, they could not be read", e, file);
+            return null;
+        }
+    }
+
+    private void save(File file, List<String> names) {
+        try {
+            final ByteArrayOutputStream payloadOutput = new ByteArrayOutputStream();
+            try(DataOutputStream output = new DataOutputStream(payloadOutput)) {
+                output.writeInt(names.size());
+                for(String name : names) {
+                    output.writeUTF(name);
+                }
+            }
+            write(file, payloadOutput.toByteArray());
+        } catch(IOException | RuntimeException e) {
+            logger.warn("Cannot cache plugin language files in {}", e, file);
+        }
+    }
+
+
+    /**
+     * Reads the payload of given entry file.
+     *
+     * @return Payload, or null if the file does not exist, is of another format version, or its length or checksum
+     *         does not match.
+     */
+    private @Nullable byte[] read(File file) throws IOException {
+        if(!file.exists()) {
+            return null;
+        }
+
+        try(DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            if(input.readInt() != magic || input.readInt() != version) {
+                logger.debug("Ignoring {}, stored with another format version", file);
+                return null;
+            }
+            final long checksum = input.readLong();
+            final int length = input.readInt();
+            // Do not trust the length read from disk, the payload cannot be larger than the file.
+            if(length < 0 || length > file.length()) {
+                logger.warn("Ignoring {}, invalid payload length {}", file, length);
+                return null;
+            }
+            final byte[] payload = new byte[length];
+            input.readFully(payload);
+            if(checksum(payload) != checksum) {
+                logger.warn("Ignoring {}, checksum does not match", file);
+                return null;
+            }
+            return payload;
+        }
+    }
+
+    /**
+     * Writes given payload to given entry file, replacing the file if it exists.
+     */
+    private void write(File file, byte[] payload) throws IOException {
+        final File directory = file.getParentFile();
+        if(!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+
+        final File tempFile = new File(file.getPath() + ".tmp");
+        try(DataOutputStream output = new DataOutputStream(new FileOutputStream(tempFile))) {
+            output.writeInt(magic);
+            output.writeInt(version);
+            output.writeLong(checksum(payload));
+            output.writeInt(payload.length);
+            output.write(payload);
+        }
+        if(file.exists() && !file.delete() || !tempFile.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * Deletes cache entries of other versions of given bundle. Only looks at the directory of given bundle, such that
+     * entries of other bundles are never deleted.
+     */
+    private void deleteStale(Bundle bundle, File file) {
+        final String versionPrefix = bundleVersion(bundle);
+        final File[] files = file.getParentFile().listFiles();
+        if(files == null) {
+            return;
+        }
+        for(File otherFile : files) {
+            final String name = otherFile.getName();
+            if(!name.startsWith(versionPrefix) && !otherFile.delete()) {
+                logger.debug("Cannot delete stale cached plugin language files {}", otherFile);
+            }
+        }
+    }
+
+    private @Nullable File file(Bundle bundle, String relativeLocation) {
+        final SpoofaxPlugin plugin = SpoofaxPlugin.plugin();
+        if(plugin == null) {
+            return null;
+        }
+        // Symbolic names of bundles are valid directory names.
+        final String key = bundleVersion(bundle)
+            + Long.toHexString(checksum(relativeLocation.getBytes(StandardCharsets.UTF_8)));
+        return plugin.getStateLocation().append(directoryName).append(bundle.getSymbolicName()).append(key + ".bin")
+            .toFile();
+    }
+
+    private static long checksum(byte[] bytes) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private static String bundleVersion(Bundle bundle) {
+        return bundle.getVersion() + "_" + Long.toHexString(bundle.getLastModified()) + "_";
+    }
+}
@@ -26,6 +26,7 @@ import org.metaborg.core.syntax.IParseUnit;
 import org.metaborg.core.transform.ITransformUnit;
 import org.metaborg.spoofax.eclipse.build.BuildRunnable;
 import org.metaborg.spoofax.eclipse.build.CleanRunnable;
+import org.metaborg.spoofax.eclipse.build.MarkerOverflow;
 import org.metaborg.spoofax.eclipse.build.ProcessDialectsRunnable;
 import org.metaborg.spoofax.eclipse.job.GlobalSchedulingRules;
 import org.metaborg.spoofax.eclipse.language.LanguageComponentChangeJob;
@@ -55,13 +56,14 @@ public class Processor<P extends IParseUnit, A extends IAnalyzeUnit, AU extends
 
     private final GlobalSchedulingRules globalRules;
     private final LanguageLoader languageLoader;
+    private final MarkerOverflow markerOverflow;
 
     private final IWorkspace workspace;
 
 
     @Inject public Processor(IEclipseResourceService resourceService, IEclipseProjectService projectService,
         IDialectProcessor dialectProcessor, IBuilder<P, A, AU, T> builder, ILanguageChangeProcessor processor,
-        GlobalSchedulingRules globalRules, LanguageLoader languageLoader) {
+        GlobalSchedulingRules globalRules, LanguageLoader languageLoader, MarkerOverflow markerOverflow) {
         this.resourceService = resourceService;
         this.projectService = projectService;
         this.dialectProcessor = dialectProcessor;
@@ -70,6 +72,7 @@ public class Processor<P extends IParseUnit, A extends IAnalyzeUnit, AU extends
 
         this.globalRules = globalRules;
         this.languageLoader = languageLoader;
+        this.markerOverflow = markerOverflow;
 
         this.workspace = ResourcesPlugin.getWorkspace();
     }
@@ -82,7 +85,7 @@ public class Processor<P extends IParseUnit, A extends IAnalyzeUnit, AU extends
         }
         final Ref<IBuildOutput<P, A, AU, T>> outputRef = new Ref<>();
         final IWorkspaceRunnable runnable =
-            new BuildRunnable<>(resourceService, builder, input, progress, cancel, outputRef);
+            new BuildRunnable<>(resourceService, markerOverflow, builder, input, progress, cancel, outputRef);
         final IResource projectResource = getResource(input.project);
         final ITask<IBuildOutput<P, A, AU, T>> task =
             new RunnableTask<>(workspace, runnable, projectResource, null, cancel, outputRef, projectResource);
@@ -114,7 +117,7 @@ public class Processor<P extends IParseUnit, A extends IAnalyzeUnit, AU extends
         final ICancel cancel = new NullCancel();
         final Job job = new LanguageComponentChangeJob(processor, change);
         job.setRule(new MultiRule(new ISchedulingRule[] { workspace.getRoot(), globalRules.startupReadLock(),
-            globalRules.languageServiceLock() }));
+            globalRules.languageServiceLock(), globalRules.strategoLock() }));
         final ITask<?> task = new JobTask<Object>(job, cancel);
         return task;
     }
@@ -123,7 +126,7 @@ public class Processor<P extends IParseUnit, A extends IAnalyzeUnit, AU extends
         final ICancel cancel = new NullCancel();
         final Job job = new LanguageImplChangeJob(processor, change);
         job.setRule(new MultiRule(new ISchedulingRule[] { workspace.getRoot(), globalRules.startupReadLock(),
-            globalRules.languageServiceLock() }));
+            globalRules.languageServiceLock(), globalRules.strategoLock() }));
         final ITask<?> task = new JobTask<Object>(job, cancel);
         return task;
     }
@@ -1,7 +1,18 @@
 package org.metaborg.spoofax.eclipse.project;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.commons.vfs2.FileObject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.metaborg.core.MetaborgConstants;
 import org.metaborg.core.config.ConfigRequest;
 import org.metaborg.core.config.IProjectConfig;
 import org.metaborg.core.config.IProjectConfigService;
@@ -9,24 +20,45 @@ import org.metaborg.core.messages.StreamMessagePrinter;
 import org.metaborg.core.project.IProject;
 import org.metaborg.core.source.ISourceTextService;
 import org.metaborg.spoofax.eclipse.resource.IEclipseResourceService;
+import org.metaborg.spoofax.eclipse.util.Nullable;
 import org.metaborg.util.log.ILogger;
 import org.metaborg.util.log.LoggerUtils;
 
 import com.google.inject.Inject;
 
-public class EclipseProjectService implements IEclipseProjectService {
+/**
+ * Project service that caches projects per Eclipse project, such that repeated lookups do not read the project
+ * configuration again, and return the same project instance. Cached projects are invalidated when their configuration
+ * file changes, or when their Eclipse project is opened, closed, or deleted. Each invalidation increments the
+ * generation of the Eclipse project, such that a lookup that read the configuration before an invalidation does not
+ * cache it.
+ */
+public class EclipseProjectService implements IEclipseProjectService, IResourceChangeListener, AutoCloseable {
     private static final ILogger logger = LoggerUtils.logger(EclipseProjectService.class);
 
+    /**
+     * Path of the project configuration file, relative to the project.
+     */
+    public static final IPath configPath = new Path(MetaborgConstants.FILE_CONFIG);
+
     private final ISourceTextService sourceTextService;
     private final IEclipseResourceService resourceService;
     private final IProjectConfigService projectConfigService;
 
+    private final ConcurrentMap<org.eclipse.core.resources.IProject, EclipseProject> projects =
+        new ConcurrentHashMap<>();
+    private final ConcurrentMap<org.eclipse.core.resources.IProject, AtomicLong> generations =
+        new ConcurrentHashMap<>();
+
 
     @Inject public EclipseProjectService(ISourceTextService sourceTextService, IEclipseResourceService resourceService,
         IProjectConfigService projectConfigService) {
         this.sourceTextService = sourceTextService;
         this.resourceService = resourceService;
         this.projectConfigService = projectConfigService;
+
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(this,
+            IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
     }
 
 
@@ -43,6 +75,85 @@ public class EclipseProjectService implements IEclipseProjectService {
             return null;
         }
 
+        final AtomicLong generation = generation(eclipseProject);
+        while(true) {
+            final EclipseProject cachedProject = projects.get(eclipseProject);
+            if(cachedProject != null) {
+                return cachedProject;
+            }
+
+            final long readGeneration = generation.get();
+            final EclipseProject project = load(eclipseProject);
+            if(project == null) {
+                return null;
+            }
+            final EclipseProject existingProject = projects.putIfAbsent(eclipseProject, project);
+            if(existingProject != null) {
+                return existingProject;
+            }
+            if(generation.get() == readGeneration) {
+                return project;
+            }
+            // Invalidated while the configuration was read, which may be outdated. Remove it and read it again.
+            projects.remove(eclipseProject, project);
+        }
+    }
+
+
+    @Override public EclipseProject get(IProject project) {
+        if(project instanceof EclipseProject) {
+            return (EclipseProject) project;
+        }
+        return get(project.location());
+    }
+
+
+    /**
+     * Stops listening for resource changes.
+     */
+    @Override public void close() {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+    }
+
+
+    @Override public void resourceChanged(IResourceChangeEvent event) {
+        if(event.getType() == IResourceChangeEvent.PRE_CLOSE || event.getType() == IResourceChangeEvent.PRE_DELETE) {
+            final IResource resource = event.getResource();
+            if(resource instanceof org.eclipse.core.resources.IProject) {
+                invalidate((org.eclipse.core.resources.IProject) resource);
+            }
+            return;
+        }
+
+        final IResourceDelta delta = event.getDelta();
+        // Also invalidate when no projects are cached, since a lookup may be reading the configuration.
+        if(delta == null) {
+            return;
+        }
+
+        for(IResourceDelta projectDelta : delta.getAffectedChildren()) {
+            final IResource resource = projectDelta.getResource();
+            if(!(resource instanceof org.eclipse.core.resources.IProject)) {
+                continue;
+            }
+            final org.eclipse.core.resources.IProject eclipseProject = (org.eclipse.core.resources.IProject) resource;
+            if(projectDelta.getKind() == IResourceDelta.REMOVED
+                || (projectDelta.getFlags() & IResourceDelta.OPEN) != 0
+                || projectDelta.findMember(configPath) != null) {
+                invalidate(eclipseProject);
+            }
+        }
+    }
+
+    private void invalidate(org.eclipse.core.resources.IProject eclipseProject) {
+        // Increment before removing, such that a lookup that caches an outdated project after removal notices it.
+        generation(eclipseProject).incrementAndGet();
+        if(projects.remove(eclipseProject) != null) {
+            logger.debug("Invalidated cached project for {}", eclipseProject);
+        }
+    }
+
+    private @Nullable EclipseProject load(org.eclipse.core.resources.IProject eclipseProject) {
         final FileObject location = resourceService.resolve(eclipseProject);
 
         final ConfigRequest<? extends IProjectConfig> configRequest = projectConfigService.get(location);
@@ -63,11 +174,7 @@ public class EclipseProjectService implements IEclipseProjectService {
         return new EclipseProject(location, config, eclipseProject);
     }
 
-
-    @Override public EclipseProject get(IProject project) {
-        if(project instanceof EclipseProject) {
-            return (EclipseProject) project;
-        }
-        return get(project.location());
+    private AtomicLong generation(org.eclipse.core.resources.IProject eclipseProject) {
+        return generations.computeIfAbsent(eclipseProject, p -> new AtomicLong());
     }
 }
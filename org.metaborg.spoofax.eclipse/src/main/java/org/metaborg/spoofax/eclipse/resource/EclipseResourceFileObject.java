@@ -5,10 +5,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 
+import org.apache.commons.vfs2.FileName;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystem;
 import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemManager;
 import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.NameScope;
 import org.apache.commons.vfs2.provider.AbstractFileName;
 import org.apache.commons.vfs2.provider.AbstractFileObject;
 import org.eclipse.core.filesystem.EFS;
@@ -23,6 +26,7 @@ import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
+import org.metaborg.spoofax.eclipse.util.StatusUtils;
 import org.metaborg.util.stream.OnCloseByteArrayOutputStream;
 import org.spoofax.terms.util.NotImplementedException;
 
@@ -49,13 +53,29 @@ public class EclipseResourceFileObject extends AbstractFileObject<EclipseResourc
         return resource;
     }
 
+    /**
+     * Initializes the Eclipse resource of this file object with given resource, if it was not set yet. Used when
+     * resolving an Eclipse resource, to avoid looking up the resource again by its path.
+     */
+    void initResource(IResource resource) {
+        if(this.resource == null) {
+            this.resource = resource;
+        }
+    }
 
-    private void update() throws CoreException {
+
+    private void update() {
         updateResource();
-        updateFileInfo();
+        // File information is fetched lazily, since most queries only require the resource.
+        info = null;
     }
 
     private void updateResource() {
+        if(resource != null && resource.exists()) {
+            // Existing resource was initialized or found before, no need to look it up again.
+            return;
+        }
+
         final String path = name.getPath();
         resource = root.findMember(path);
         if(resource != null) {
@@ -89,16 +109,18 @@ public class EclipseResourceFileObject extends AbstractFileObject<EclipseResourc
         }
     }
 
-    private void updateFileInfo() throws CoreException {
-        if(resource == null) {
-            return;
+    private IFileInfo info() throws CoreException {
+        if(info != null) {
+            return info;
         }
-        final URI locationURI = resource.getLocationURI();
+        final URI locationURI = resource != null ? resource.getLocationURI() : null;
         if(locationURI == null) {
-            return;
+            throw new CoreException(
+                StatusUtils.error("Cannot get file information of " + name + ", it has no file system location"));
         }
         final IFileStore store = EFS.getStore(locationURI);
         info = store.fetchInfo();
+        return info;
     }
 
     private IPath getPath() {
@@ -139,16 +161,18 @@ public class EclipseResourceFileObject extends AbstractFileObject<EclipseResourc
         }
     }
 
-    @Override protected boolean doIsHidden() {
-        return info.getAttribute(EFS.ATTRIBUTE_HIDDEN);
+    @Override protected boolean doIsHidden() throws CoreException {
+        return info().getAttribute(EFS.ATTRIBUTE_HIDDEN);
     }
 
-    @Override protected boolean doIsReadable() {
+    @Override protected boolean doIsReadable() throws CoreException {
+        final IFileInfo info = info();
         return info.getAttribute(EFS.ATTRIBUTE_OWNER_READ) || info.getAttribute(EFS.ATTRIBUTE_GROUP_READ)
             || info.getAttribute(EFS.ATTRIBUTE_OTHER_READ);
     }
 
-    @Override protected boolean doIsWriteable() {
+    @Override protected boolean doIsWriteable() throws CoreException {
+        final IFileInfo info = info();
         return info.getAttribute(EFS.ATTRIBUTE_OWNER_WRITE) || info.getAttribute(EFS.ATTRIBUTE_GROUP_WRITE)
             || info.getAttribute(EFS.ATTRIBUTE_OTHER_WRITE);
     }
@@ -164,17 +188,27 @@ public class EclipseResourceFileObject extends AbstractFileObject<EclipseResourc
     }
 
     @Override protected FileObject[] doListChildrenResolved() throws CoreException, FileSystemException {
-        final String[] children = doListChildren();
+        final IContainer container = (IContainer) resource;
+        final IResource[] members = container.members();
         final FileSystem fileSystem = getFileSystem();
-        final FileObject[] files = new FileObject[children.length];
-        for(int i = 0; i < children.length; ++i) {
-            files[i] = fileSystem.resolveFile(children[i]);
+        final FileSystemManager fileSystemManager = fileSystem.getFileSystemManager();
+        final FileObject[] files = new FileObject[members.length];
+        for(int i = 0; i < members.length; ++i) {
+            final IResource member = members[i];
+            final FileName childName = fileSystemManager.resolveName(name, member.getName(), NameScope.CHILD);
+            final FileObject file = fileSystem.resolveFile(childName);
+            // Attach children in batch with their member resource, such that directory walks do not look up each
+            // child again when getting its type.
+            if(file instanceof EclipseResourceFileObject) {
+                ((EclipseResourceFileObject) file).initResource(member);
+            }
+            files[i] = file;
         }
         return files;
     }
 
-    @Override protected long doGetContentSize() {
-        return info.getLength();
+    @Override protected long doGetContentSize() throws CoreException {
+        return info().getLength();
     }
 
     @Override protected void doDelete() throws CoreException {
@@ -4,6 +4,8 @@ import java.io.File;
 import java.net.URI;
 
 import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystem;
+import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileSystemManager;
 import org.apache.commons.vfs2.provider.local.LocalFile;
 import org.eclipse.core.resources.IResource;
@@ -31,11 +33,17 @@ import org.metaborg.util.log.LoggerUtils;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
+/**
+ * Resource service for Eclipse. Eclipse resources and paths are resolved through the Eclipse file system directly,
+ * which skips building and parsing an {@code eclipse://} URI. Resolved file objects are cached by the file system.
+ */
 public class EclipseResourceService extends ResourceService implements IEclipseResourceService {
     private static final ILogger logger = LoggerUtils.logger(EclipseResourceService.class);
 
     private final IWorkspaceRoot root;
 
+    private volatile FileSystem fileSystem;
+
 
     @Inject public EclipseResourceService(FileSystemManager fileSystemManager,
         @Named("ResourceClassLoader") ClassLoader classLoader) {
@@ -46,11 +54,26 @@ public class EclipseResourceService extends ResourceService implements IEclipseR
 
 
     @Override public FileObject resolve(IResource resource) {
-        return resolve(resource.getFullPath());
+        final FileObject fileObject = resolve(resource.getFullPath());
+        if(fileObject instanceof EclipseResourceFileObject) {
+            ((EclipseResourceFileObject) fileObject).initResource(resource);
+        }
+        return fileObject;
     }
 
     @Override public FileObject resolve(IPath path) {
-        return resolve("eclipse://" + path.toString());
+        FileSystem fileSystem = this.fileSystem;
+        if(fileSystem == null) {
+            final FileObject rootResource = resolve("eclipse:///");
+            fileSystem = rootResource.getFileSystem();
+            this.fileSystem = fileSystem;
+        }
+        try {
+            // Resolve through the Eclipse file system directly, which skips parsing the scheme of a URI.
+            return fileSystem.resolveFile(path.makeAbsolute().toString());
+        } catch(FileSystemException e) {
+            return resolve("eclipse://" + path.toString());
+        }
     }
 
     @Override public FileObject resolveWorkspaceRoot() {
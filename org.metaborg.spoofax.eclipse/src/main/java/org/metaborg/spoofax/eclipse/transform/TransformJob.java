@@ -7,6 +7,8 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.IJobManager;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
 import org.metaborg.core.action.ITransformGoal;
 import org.metaborg.core.context.ContextException;
@@ -26,6 +28,7 @@ import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxInputUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxUnitService;
+import org.metaborg.spoofax.eclipse.job.GlobalSchedulingRules;
 import org.metaborg.spoofax.eclipse.job.ThreadKillerJob;
 import org.metaborg.spoofax.eclipse.util.Nullable;
 import org.metaborg.spoofax.eclipse.util.StatusUtils;
@@ -47,18 +50,21 @@ public class TransformJob extends Job {
     private final ISpoofaxParseResultRequester parseResultRequester;
     private final ISpoofaxAnalysisService analysisService;
     private final ISpoofaxAnalysisResultRequester analysisResultRequester;
+    private final GlobalSchedulingRules globalRules;
 
     private final ILanguageImpl langImpl;
     private final Iterable<TransformResource> resources;
     private final ITransformGoal goal;
 
     private ThreadKillerJob threadKiller;
+    private @Nullable ISchedulingRule strategoRule;
 
 
     public TransformJob(IContextService contextService, ISpoofaxUnitService unitService,
         ISpoofaxTransformService transformService, ISpoofaxParseResultRequester parseResultProcessor,
         ISpoofaxAnalysisService analysisService, ISpoofaxAnalysisResultRequester analysisResultProcessor,
-        ILanguageImpl langImpl, Iterable<TransformResource> resources, ITransformGoal goal) {
+        GlobalSchedulingRules globalRules, ILanguageImpl langImpl, Iterable<TransformResource> resources,
+        ITransformGoal goal) {
         super("Transforming resources");
 
         this.contextService = contextService;
@@ -67,6 +73,7 @@ public class TransformJob extends Job {
         this.parseResultRequester = parseResultProcessor;
         this.analysisService = analysisService;
         this.analysisResultRequester = analysisResultProcessor;
+        this.globalRules = globalRules;
 
         this.langImpl = langImpl;
         this.resources = resources;
@@ -138,21 +145,55 @@ public class TransformJob extends Job {
             monitor.setTaskName("Waiting for analysis result");
             final ISpoofaxAnalyzeUnit result = analysisResultRequester.request(input, context).blockingSingle();
             monitor.worked(1);
-            monitor.setTaskName("Waiting for context read lock");
-            try(IClosableLock lock = context.read()) {
-                monitor.worked(1);
-                monitor.setTaskName("Transforming " + source);
-                transformService.transform(result, context, goal, config);
-                monitor.worked(1);
+            // Acquire the Stratego rule before the context lock, in the same order as editor analysis jobs.
+            final ISchedulingRule rule = strategoRule();
+            try {
+                beginStrategoRule(rule, monitor);
+                monitor.setTaskName("Waiting for context read lock");
+                try(IClosableLock lock = context.read()) {
+                    monitor.worked(1);
+                    monitor.setTaskName("Transforming " + source);
+                    transformService.transform(result, context, goal, config);
+                    monitor.worked(1);
+                }
+            } finally {
+                Job.getJobManager().endRule(rule);
             }
         } else {
             monitor.setWorkRemaining(2);
             monitor.setTaskName("Waiting for parse result");
             final ISpoofaxParseUnit result = parseResultRequester.request(input).blockingSingle();
             monitor.worked(1);
-            monitor.setTaskName("Transforming " + source);
-            transformService.transform(result, context, goal, config);
-            monitor.worked(1);
+            final ISchedulingRule rule = strategoRule();
+            try {
+                beginStrategoRule(rule, monitor);
+                monitor.setTaskName("Transforming " + source);
+                transformService.transform(result, context, goal, config);
+                monitor.worked(1);
+            } finally {
+                Job.getJobManager().endRule(rule);
+            }
+        }
+    }
+
+    /**
+     * Returns the Stratego rule of this job, which is shared by all transformations of this job, such that this job
+     * takes a single slot in the pool of concurrent Stratego calls.
+     */
+    private ISchedulingRule strategoRule() {
+        if(strategoRule == null) {
+            strategoRule = globalRules.strategoReadLock(this);
         }
+        return strategoRule;
+    }
+
+    /**
+     * Acquires given Stratego rule for a single transformation. Acquired only around the transformation instead of
+     * being the rule of this job, since waiting for parse or analysis results while holding it could block the jobs
+     * that produce those results. Must be matched by {@link IJobManager#endRule}, also when this method throws.
+     */
+    private void beginStrategoRule(ISchedulingRule rule, SubMonitor monitor) {
+        monitor.setTaskName("Waiting for Stratego lock");
+        Job.getJobManager().beginRule(rule, monitor);
     }
 }
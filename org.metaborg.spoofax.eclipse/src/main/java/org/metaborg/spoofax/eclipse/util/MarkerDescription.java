@@ -0,0 +1,44 @@
+package org.metaborg.spoofax.eclipse.util;
+
+import java.util.Arrays;
+
+/**
+ * Description of a marker: its type and attribute values. Created with {@link MarkerUtils#description}, without
+ * accessing the workspace. Two descriptions are equal if they describe the same marker.
+ */
+public final class MarkerDescription {
+    /**
+     * Type of the marker.
+     */
+    public final String type;
+    private final Object[] values;
+
+
+    MarkerDescription(String type, Object[] values) {
+        this.type = type;
+        this.values = values;
+    }
+
+
+    Object[] values() {
+        return values;
+    }
+
+
+    @Override public int hashCode() {
+        return 31 * type.hashCode() + Arrays.hashCode(values);
+    }
+
+    @Override public boolean equals(Object obj) {
+        if(this == obj)
+            return true;
+        if(obj == null || getClass() != obj.getClass())
+            return false;
+        final MarkerDescription other = (MarkerDescription) obj;
+        return type.equals(other.type) && Arrays.equals(values, other.values);
+    }
+
+    @Override public String toString() {
+        return type + Arrays.toString(values);
+    }
+}
@@ -1,5 +1,9 @@
 package org.metaborg.spoofax.eclipse.util;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
@@ -9,6 +13,11 @@ import org.metaborg.core.messages.MessageType;
 import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.spoofax.eclipse.SpoofaxPlugin;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
 /**
  * Utility functions for creating and removing {@link IMarker} instances.
  */
@@ -20,6 +29,8 @@ public final class MarkerUtils {
     private static final String infoPostfix = ".info";
     private static final String warningPostfix = ".warning";
     private static final String errorPostfix = ".error";
+    private static final String[] attributeNames = { IMarker.CHAR_START, IMarker.CHAR_END, IMarker.LINE_NUMBER,
+        IMarker.MESSAGE, IMarker.SEVERITY, IMarker.PRIORITY };
 
 
     /**
@@ -34,20 +45,167 @@ public final class MarkerUtils {
      *             When creating the marker fails.
      */
     public static IMarker createMarker(IResource resource, IMessage message) throws CoreException {
-        final String type = type(message.type(), message.severity());
-        final IMarker marker = resource.createMarker(type);
-        final ISourceRegion region = message.region();
+        return createMarker(resource, description(message));
+    }
+
+    /**
+     * Creates a marker for given resource, from given marker description.
+     * 
+     * @param resource
+     *            Resource to create a marker on.
+     * @param description
+     *            Description of the marker to create.
+     * @return Created marker.
+     * @throws CoreException
+     *             When creating the marker fails.
+     */
+    public static IMarker createMarker(IResource resource, MarkerDescription description) throws CoreException {
+        final IMarker marker = resource.createMarker(description.type);
+        marker.setAttributes(attributeNames, description.values());
+        return marker;
+    }
+
+    /**
+     * Creates a description of the marker for given message, without accessing the workspace. Use to prepare markers
+     * concurrently, before creating or updating them with {@link #createMarker(IResource, MarkerDescription)} or
+     * {@link #updateMarkers(IResource, Collection, MessageType...)}.
+     * 
+     * @param message
+     *            Message to describe the marker for.
+     * @return Marker description.
+     */
+    public static MarkerDescription description(IMessage message) {
+        return description(message.type(), message.severity(), message.message(), message.region());
+    }
+
+    /**
+     * Creates a description of a marker, without accessing the workspace.
+     * 
+     * @param type
+     *            Message type of the marker.
+     * @param severity
+     *            Severity of the marker.
+     * @param message
+     *            Text of the marker.
+     * @param region
+     *            Region of the marker, or null to put the marker on the first line.
+     * @return Marker description.
+     */
+    public static MarkerDescription description(MessageType type, MessageSeverity severity, String message,
+        @Nullable ISourceRegion region) {
+        return new MarkerDescription(type(type, severity), attributeValues(severity, message, region));
+    }
+
+    /**
+     * Updates the markers of given message types on given resource to match given messages. Markers that exactly match
+     * a message, by type, severity, region, and text, are kept. Other markers of given message types are deleted, and
+     * markers are only created for messages without a matching marker, such that unchanged messages do not cause
+     * marker changes. Messages of other types than given message types are always created.
+     * 
+     * @param resource
+     *            Resource to update markers for.
+     * @param messages
+     *            Messages to update the markers to.
+     * @param types
+     *            Message types of markers to update.
+     * @throws CoreException
+     *             When finding, deleting, or creating markers fails.
+     */
+    public static void updateMarkers(IResource resource, Iterable<IMessage> messages, MessageType... types)
+        throws CoreException {
+        final Collection<MarkerDescription> descriptions = Lists.newArrayList();
+        for(IMessage message : messages) {
+            descriptions.add(description(message));
+        }
+        updateMarkers(resource, descriptions, types);
+    }
+
+    /**
+     * Updates the markers of given message types on given resource to match given marker descriptions, like
+     * {@link #updateMarkers(IResource, Iterable, MessageType...)}.
+     * 
+     * @param resource
+     *            Resource to update markers for.
+     * @param descriptions
+     *            Descriptions of the markers to update the markers to.
+     * @param types
+     *            Message types of markers to update.
+     * @throws CoreException
+     *             When finding, deleting, or creating markers fails.
+     */
+    public static void updateMarkers(IResource resource, Collection<MarkerDescription> descriptions,
+        MessageType... types) throws CoreException {
+        final Set<String> markerTypes = Sets.newHashSet();
+        for(MessageType type : types) {
+            for(MessageSeverity severity : MessageSeverity.values()) {
+                markerTypes.add(type(type, severity));
+            }
+        }
+
+        final ListMultimap<MarkerDescription, IMarker> existingMarkers = ArrayListMultimap.create();
+        if(!markerTypes.isEmpty()) {
+            for(IMarker marker : resource.findMarkers(id, true, IResource.DEPTH_ZERO)) {
+                final String type = marker.getType();
+                if(markerTypes.contains(type)) {
+                    final MarkerDescription description =
+                        new MarkerDescription(type, marker.getAttributes(attributeNames));
+                    existingMarkers.put(description, marker);
+                }
+            }
+        }
+
+        final Collection<MarkerDescription> newMarkers = Lists.newArrayList();
+        for(MarkerDescription description : descriptions) {
+            final List<IMarker> matchingMarkers = existingMarkers.get(description);
+            if(matchingMarkers.isEmpty()) {
+                newMarkers.add(description);
+            } else {
+                matchingMarkers.remove(matchingMarkers.size() - 1);
+            }
+        }
+
+        if(!existingMarkers.isEmpty()) {
+            final Collection<IMarker> staleMarkers = existingMarkers.values();
+            resource.getWorkspace().deleteMarkers(staleMarkers.toArray(new IMarker[staleMarkers.size()]));
+        }
+        for(MarkerDescription description : newMarkers) {
+            createMarker(resource, description);
+        }
+    }
+
+    private static Object[] attributeValues(MessageSeverity severity, String message,
+        @Nullable ISourceRegion region) {
+        final Object[] values = new Object[attributeNames.length];
         if(region != null) {
-            marker.setAttribute(IMarker.CHAR_START, region.startOffset());
-            marker.setAttribute(IMarker.CHAR_END, region.endOffset() + 1);
-            marker.setAttribute(IMarker.LINE_NUMBER, region.startRow() + 1);
+            values[0] = region.startOffset();
+            values[1] = region.endOffset() + 1;
+            values[2] = region.startRow() + 1;
         } else {
-            marker.setAttribute(IMarker.LINE_NUMBER, 1);
+            values[2] = 1;
+        }
+        values[3] = message;
+        values[4] = severity(severity);
+        values[5] = IMarker.PRIORITY_NORMAL;
+        return values;
+    }
+
+
+    /**
+     * Deletes the markers of given resource that match given marker description.
+     * 
+     * @param resource
+     *            Resource to delete markers from.
+     * @param description
+     *            Description of the markers to delete.
+     * @throws CoreException
+     *             When finding or deleting markers fails.
+     */
+    public static void deleteMarkers(IResource resource, MarkerDescription description) throws CoreException {
+        for(IMarker marker : resource.findMarkers(description.type, false, IResource.DEPTH_ZERO)) {
+            if(description.equals(new MarkerDescription(marker.getType(), marker.getAttributes(attributeNames)))) {
+                marker.delete();
+            }
         }
-        marker.setAttribute(IMarker.MESSAGE, message.message());
-        marker.setAttribute(IMarker.SEVERITY, severity(message.severity()));
-        marker.setAttribute(IMarker.PRIORITY, IMarker.PRIORITY_NORMAL);
-        return marker;
     }
 
 